@@ -0,0 +1,133 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Carga para um servidor já rodando: pares de clientes se desafiam e jogam
+// partidas (cada um passa o turno, às vezes ataca ou manda chat da partida) e
+// uma parte dos clientes manda chat global, até acabar o tempo
+// Usada para ver os relatórios do servidor sob carga, por exemplo o de pinning
+// do modo virtual:
+// java -cp build server.Server virtual
+// java -cp build\bench CargaServidor 200 70
+// Argumentos: clientes (par), segundos, porta
+public class CargaServidor {
+  private static final AtomicLong enviadas = new AtomicLong();
+  private static final AtomicLong recebidas = new AtomicLong();
+  private static final AtomicLong turnos = new AtomicLong();
+  private static final AtomicLong partidas = new AtomicLong();
+
+  public static void main(String[] args) throws Exception {
+    int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+    int porta = args.length > 2 ? Integer.parseInt(args[2]) : 9876;
+    long fim = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i + 1 < clientes; i += 2) {
+      String nomeA = "carga" + i;
+      String nomeB = "carga" + (i + 1);
+      threads.add(iniciar(new Jogador(nomeA, nomeB, true, porta, fim)));
+      threads.add(iniciar(new Jogador(nomeB, nomeA, false, porta, fim)));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    System.out.println("Linhas enviadas: " + enviadas.get() + ", recebidas: " + recebidas.get() + ", turnos: "
+        + turnos.get() + ", partidas iniciadas: " + partidas.get());
+  }
+
+  private static Thread iniciar(Runnable tarefa) {
+    Thread thread = new Thread(tarefa);
+    thread.start();
+    return thread;
+  }
+
+  private static class Jogador implements Runnable {
+    private final String nome;
+    private final String oponente;
+    private final boolean desafiante;
+    private final int porta;
+    private final long fim;
+    private final Random random = new Random();
+    private PrintWriter saida;
+
+    Jogador(String nome, String oponente, boolean desafiante, int porta, long fim) {
+      this.nome = nome;
+      this.oponente = oponente;
+      this.desafiante = desafiante;
+      this.porta = porta;
+      this.fim = fim;
+    }
+
+    public void run() {
+      try (Socket socket = new Socket("localhost", porta)) {
+        socket.setSoTimeout(1000);
+        saida = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        enviar("CADASTRAR " + nome);
+        // Dá tempo do oponente se cadastrar antes do desafio
+        Thread.sleep(500);
+        if (desafiante) {
+          enviar("DESAFIAR " + oponente);
+        }
+        while (System.nanoTime() < fim) {
+          String linha;
+          try {
+            linha = entrada.readLine();
+          } catch (SocketTimeoutException e) {
+            // Nada chegou, desafia de novo caso o desafio tenha se perdido
+            if (desafiante) {
+              enviar("DESAFIAR " + oponente);
+            }
+            continue;
+          }
+          if (linha == null) {
+            return;
+          }
+          recebidas.incrementAndGet();
+          responder(linha);
+        }
+        enviar("SAIR");
+      } catch (IOException | InterruptedException e) {
+        System.err.println(nome + ": " + e.getMessage());
+      }
+    }
+
+    private void responder(String linha) {
+      if (linha.startsWith("DESAFIAR|200")) {
+        enviar("ACEITARDESAFIO " + oponente);
+      } else if (linha.startsWith("RESERVADOPARTIDA|200")) {
+        enviar("PRONTOPARTIDA");
+        if (desafiante) {
+          partidas.incrementAndGet();
+        }
+      } else if (linha.startsWith("TURNO|200") && linha.endsWith("turno:" + nome)) {
+        turnos.incrementAndGet();
+        int sorteio = random.nextInt(10);
+        if (sorteio == 0) {
+          enviar("CHATPARTIDA turno " + turnos.get());
+        } else if (sorteio == 1) {
+          enviar("ATACAR " + random.nextInt(16) + " " + random.nextInt(16) + " 0");
+          return;
+        }
+        enviar("PASSAR");
+      } else if (linha.startsWith("ATACAR|400")) {
+        // Fora do alcance, o turno continua sendo dele
+        enviar("PASSAR");
+      } else if (linha.startsWith("FIMPARTIDA")) {
+        if (desafiante) {
+          enviar("DESAFIAR " + oponente);
+        }
+      } else if (linha.startsWith("CHATPARTIDA|200") && random.nextInt(20) == 0) {
+        enviar("CHATGLOBAL " + nome + " diz oi");
+      }
+    }
+
+    private void enviar(String linha) {
+      saida.println(linha);
+      enviadas.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+import java.util.*;
+import classes.*;
+
+// Confere a saída de um jogador morto de uma partida em andamento: ele deve ser
+// encontrado mesmo fora da tabela dos vivos, removido da lista dos mortos e do
+// canal da partida, sem afetar os outros jogadores
+// Termina com código 1 se alguma conferência falhar
+public class ConferirSaidaJogadorMorto {
+  private static int falhas = 0;
+
+  public static void main(String[] args) {
+    List<Cliente> clientes = new ArrayList<>();
+    for (String nome : new String[] { "ana", "bia", "caio" }) {
+      clientes.add(new Cliente(nome, "token-" + nome, null));
+    }
+    JogoPartida partida = new JogoPartida(3, clientes, null, 16);
+    Canal canal = partida.getCanal();
+
+    Jogador bia = partida.buscarJogadorPorNome("bia");
+    partida.matarJogador(bia);
+    conferir(partida.buscarJogadorPorNome("bia") == null, "morto nao aparece entre os vivos");
+    conferir(partida.buscarJogadorPartida("bia") == bia, "morto encontrado na partida");
+    conferir(canal.buscar("bia") == bia, "morto continua no canal ate sair");
+
+    // Era aqui que a saída do morto falhava (desinscrever com null)
+    partida.removerJogador(partida.buscarJogadorPartida("bia"));
+    conferir(canal.buscar("bia") == null, "morto sai do canal");
+    conferir(!partida.getJogadoresMortos().contains(bia), "morto sai da lista dos mortos");
+    conferir(canal.tamanho() == 2, "vivos continuam no canal");
+    conferir(partida.getJogadores().size() == 2, "vivos continuam na partida");
+
+    // Sair de novo, ou com um nome que não está na partida, não faz nada
+    partida.removerJogador(partida.buscarJogadorPartida("bia"));
+    partida.removerJogador(partida.buscarJogadorPartida("ninguem"));
+    conferir(canal.tamanho() == 2, "saida repetida nao muda o canal");
+
+    // Um vivo saindo continua funcionando como antes
+    Jogador caio = partida.buscarJogadorPartida("caio");
+    partida.removerJogador(caio);
+    conferir(canal.buscar("caio") == null, "vivo sai do canal");
+    conferir(partida.verificarFimPartida() != null, "ultimo vivo vence");
+
+    System.out.println(falhas == 0 ? "OK" : falhas + " falha(s)");
+    if (falhas > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static void conferir(boolean condicao, String descricao) {
+    if (!condicao) {
+      System.out.println("FALHOU: " + descricao);
+      falhas++;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+import java.lang.management.*;
+import classes.*;
+
+// Mede os bytes alocados por broadcast de um LISTARJOGADORES: montando a linha
+// para cada cliente (enviarLinha) contra uma Mensagem só compartilhada por todos
+// (enviar), sobre conexões que só esvaziam a fila
+// Argumentos: quantidade de clientes
+public class MedirBroadcast {
+  private static final int BROADCASTS = 2000;
+
+  // Conexão sem socket, descarregar só retira as mensagens da fila
+  private static class ConexaoNula extends Conexao {
+    protected void descarregar() {
+      while (retirarMensagem() != null) {
+      }
+    }
+
+    public void fechar() {
+    }
+
+    protected void fecharImediatamente() {
+    }
+
+    public boolean isFechada() {
+      return false;
+    }
+
+    public String getEndereco() {
+      return "nula";
+    }
+  }
+
+  public static void main(String[] args) {
+    int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    ConexaoNula[] conexoes = new ConexaoNula[clientes];
+    StringBuilder valor = new StringBuilder("jogadores:{");
+    for (int i = 0; i < clientes; i++) {
+      conexoes[i] = new ConexaoNula();
+      if (i > 0) {
+        valor.append(';');
+      }
+      valor.append("nome:jogador").append(i);
+    }
+    valor.append('}');
+    String lista = valor.toString();
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // A primeira rodada é aquecimento
+    for (int rodada = 0; rodada < 2; rodada++) {
+      long bytes0 = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < BROADCASTS; i++) {
+        for (ConexaoNula conexao : conexoes) {
+          conexao.enviarLinha("LISTARJOGADORES", "200", "Jogadores conectados", lista);
+        }
+      }
+      long bytes1 = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < BROADCASTS; i++) {
+        Mensagem mensagem = new Mensagem("LISTARJOGADORES", "200", "Jogadores conectados", lista);
+        for (ConexaoNula conexao : conexoes) {
+          conexao.enviar(mensagem);
+        }
+      }
+      long bytes2 = threads.getCurrentThreadAllocatedBytes();
+      if (rodada == 1) {
+        System.out.printf("clientes=%d linha=%dB | uma linha por cliente: %d B/broadcast | Mensagem compartilhada: %d"
+            + " B/broadcast%n", clientes, lista.length(), (bytes1 - bytes0) / BROADCASTS,
+            (bytes2 - bytes1) / BROADCASTS);
+      }
+    }
+  }
+}
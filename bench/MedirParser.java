@@ -0,0 +1,86 @@
+import java.lang.management.*;
+import java.util.*;
+import classes.*;
+import server.*;
+
+// Mede o custo de interpretar uma linha de comando: o jeito antigo (trim,
+// split, toUpperCase, Tradutor e switch de Strings) contra a LinhaComando com a
+// ArvoreComandos, os dois chegando até as coordenadas e o texto do chat
+// Imprime ns e bytes alocados por linha, a última de RODADAS rodadas (as
+// primeiras servem de aquecimento)
+// Argumentos: linhas por rodada
+public class MedirParser {
+  private static final int RODADAS = 3;
+  private static final String TOKEN = "1f0c2a9e-1111-2222-3333-444455556666";
+  private static final String[] LINHAS = { "MOVER bot123 " + TOKEN + " 3 7 1", "ataque bot123 " + TOKEN + " 12 4",
+      "PING bot123 " + TOKEN, "chat bot123 " + TOKEN + " gg bem jogado" };
+
+  // Acumula os resultados para o JIT não descartar o trabalho medido
+  private static long soma = 0;
+
+  public static void main(String[] args) throws Exception {
+    int linhasPorRodada = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    byte[][] bytes = new byte[LINHAS.length][];
+    for (int i = 0; i < LINHAS.length; i++) {
+      bytes[i] = (LINHAS[i] + "\n").getBytes();
+    }
+    Tradutor tradutor = new Tradutor();
+    ArvoreComandos arvore = new ArvoreComandos(tradutor);
+    LinhaComando linha = new LinhaComando();
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long bytes0 = threads.getCurrentThreadAllocatedBytes();
+      long inicio = System.nanoTime();
+      for (int i = 0; i < linhasPorRodada; i++) {
+        soma += interpretarComSplit(LINHAS[i & 3], tradutor);
+      }
+      long meio = System.nanoTime();
+      long bytes1 = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < linhasPorRodada; i++) {
+        byte[] dados = bytes[i & 3];
+        linha.consumir(dados, 0, dados.length);
+        soma += interpretarLinha(linha, arvore);
+        linha.limpar();
+      }
+      long fim = System.nanoTime();
+      long bytes2 = threads.getCurrentThreadAllocatedBytes();
+      if (rodada == RODADAS - 1) {
+        System.out.printf("split: %d ns/linha %d B/linha | LinhaComando: %d ns/linha %d B/linha%n",
+            (meio - inicio) / linhasPorRodada, (bytes1 - bytes0) / linhasPorRodada, (fim - meio) / linhasPorRodada,
+            (bytes2 - bytes1) / linhasPorRodada);
+      }
+    }
+    System.out.println("(soma " + soma + ")");
+  }
+
+  // Como o servidor fazia antes da LinhaComando
+  private static int interpretarComSplit(String texto, Tradutor tradutor) {
+    String[] campos = texto.trim().split(" ");
+    String comando = campos[0].toUpperCase();
+    if (tradutor.containsKey(comando)) {
+      comando = tradutor.get(comando);
+    }
+    switch (comando) {
+      case "MOVER":
+      case "ATACAR":
+        return Integer.parseInt(campos[3]) + Integer.parseInt(campos[4]);
+      case "CHATGLOBAL":
+        return String.join(" ", Arrays.copyOfRange(campos, 3, campos.length)).length();
+      default:
+        return 1;
+    }
+  }
+
+  private static int interpretarLinha(LinhaComando linha, ArvoreComandos arvore) {
+    switch (linha.comando(arvore)) {
+      case MOVER:
+      case ATACAR:
+        return linha.campoInteiro(3) + linha.campoInteiro(4);
+      case CHATGLOBAL:
+        return linha.restoAPartir(3).length();
+      default:
+        return 1;
+    }
+  }
+}
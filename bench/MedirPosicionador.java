@@ -0,0 +1,92 @@
+package classes;
+
+import java.util.*;
+
+// Mede o tempo para posicionar os jogadores no início da partida: o
+// Posicionador (embaralhamento preguiçoso das casas livres) contra o sorteio
+// com rejeição de antes, para vários tamanhos de tabuleiro e de partida
+// O sorteio antigo não tinha limite e nunca terminava quando os jogadores não
+// cabiam, aqui ele desiste depois de LIMITE_SORTEIOS e conta como travado
+// Os dois criam o Tabuleiro da partida, e o Posicionador é conferido: dois
+// jogadores próximos terminam com exceção
+// Fica no pacote classes porque usa o Tabuleiro e a Posicao direto:
+// java -cp build;build\bench classes.MedirPosicionador
+public class MedirPosicionador {
+  private static final int[] TAMANHOS = { 16, 64, 256, 1024 };
+  private static final int[] JOGADORES = { 2, 4, 16, 64, 256 };
+  private static final int REPETICOES = 200;
+  private static final int LIMITE_SORTEIOS = 20_000;
+  private static final int DISTANCIA = Constants.PROXIMIDADE_INICIAL_JOGADORES;
+  private static final int MODO = Constants.MODO_DISTANCIA_MOVIMENTO;
+
+  public static void main(String[] args) {
+    // A primeira rodada é aquecimento
+    for (int rodada = 0; rodada < 2; rodada++) {
+      for (int tamanho : TAMANHOS) {
+        for (int jogadores : JOGADORES) {
+          Random random = new Random(1);
+          int[] semLugar = new int[1];
+          long inicio = System.nanoTime();
+          for (int i = 0; i < REPETICOES; i++) {
+            posicionar(tamanho, jogadores, random, semLugar);
+          }
+          double usPosicionador = (System.nanoTime() - inicio) / 1e3 / REPETICOES;
+          int[] travados = new int[1];
+          inicio = System.nanoTime();
+          for (int i = 0; i < REPETICOES; i++) {
+            sortearComRejeicao(tamanho, jogadores, random, travados);
+          }
+          double usRejeicao = (System.nanoTime() - inicio) / 1e3 / REPETICOES;
+          if (rodada == 1) {
+            System.out.printf("%4dx%-4d %3d jogadores: Posicionador %9.1f us (sem lugar %d/%d) | rejeicao %9.1f us"
+                + " (travaria %d/%d)%n", tamanho, tamanho, jogadores, usPosicionador, semLugar[0], REPETICOES,
+                usRejeicao, travados[0], REPETICOES);
+          }
+        }
+      }
+    }
+  }
+
+  private static void posicionar(int tamanho, int jogadores, Random random, int[] semLugar) {
+    Tabuleiro tabuleiro = new Tabuleiro(tamanho);
+    Posicionador posicionador = new Posicionador(tabuleiro, DISTANCIA, MODO, random);
+    List<Posicao> posicoes = new ArrayList<>();
+    for (int j = 0; j < jogadores; j++) {
+      int casa = posicionador.proximaCasa();
+      if (casa < 0) {
+        semLugar[0]++;
+        return;
+      }
+      int x = casa % tamanho;
+      int y = casa / tamanho;
+      for (Posicao outra : posicoes) {
+        if (outra.distanciaPermitida(x, y, DISTANCIA, MODO)) {
+          throw new IllegalStateException("Jogadores proximos em " + x + "," + y);
+        }
+      }
+      tabuleiro.adicionar(x, y);
+      posicoes.add(new Posicao(x, y));
+    }
+  }
+
+  // Como o servidor fazia antes: sorteia casas até achar uma longe de todos,
+  // olhando a ocupação do tabuleiro (que a partida cria de qualquer jeito)
+  private static void sortearComRejeicao(int tamanho, int jogadores, Random random, int[] travados) {
+    Tabuleiro tabuleiro = new Tabuleiro(tamanho);
+    for (int j = 0; j < jogadores; j++) {
+      int sorteios = 0;
+      while (true) {
+        if (++sorteios > LIMITE_SORTEIOS) {
+          travados[0]++;
+          return;
+        }
+        int x = random.nextInt(tamanho);
+        int y = random.nextInt(tamanho);
+        if (!tabuleiro.algumNoAlcance(x, y, DISTANCIA, MODO)) {
+          tabuleiro.adicionar(x, y);
+          break;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+import java.util.*;
+import classes.*;
+import server.*;
+
+// Mede o custo de cada broadcast para percorrer os clientes conectados: a cópia
+// da lista dentro da trava do synchronizedMap que era usada antes contra o
+// retrato do RegistroClientes, que só é montado de novo quando alguém entra ou
+// sai
+// Também mede uma rajada de cadastros seguida de um broadcast, que deve
+// custar uma única reconstrução do retrato
+// Imprime a última de RODADAS rodadas (as primeiras servem de aquecimento)
+// Argumentos: clientes, broadcasts por rodada
+public class MedirRegistro {
+  private static final int RODADAS = 3;
+  private static final int RAJADA = 1000;
+
+  // Acumula os resultados para o JIT não descartar o trabalho medido
+  private static long soma = 0;
+
+  public static void main(String[] args) {
+    int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int broadcasts = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    Map<String, Cliente> mapa = Collections.synchronizedMap(new HashMap<>());
+    RegistroClientes registro = new RegistroClientes();
+    for (int i = 0; i < clientes; i++) {
+      Cliente cliente = new Cliente("cliente" + i, "token", null);
+      mapa.put(cliente.getNome(), cliente);
+      registro.putIfAbsent(cliente.getNome(), cliente);
+    }
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long inicio = System.nanoTime();
+      for (int i = 0; i < broadcasts; i++) {
+        List<Cliente> copia;
+        synchronized (mapa) {
+          copia = new ArrayList<>(mapa.values());
+        }
+        soma += copia.size();
+      }
+      long meio = System.nanoTime();
+      for (int i = 0; i < broadcasts; i++) {
+        soma += registro.retrato().getClientes().length;
+      }
+      long fim = System.nanoTime();
+
+      // Rajada de cadastros (e as saídas deles) seguida de um broadcast
+      long reconstrucoes = registro.getCanal().getReconstrucoes();
+      Cliente[] rajada = new Cliente[RAJADA];
+      long inicioRajada = System.nanoTime();
+      for (int i = 0; i < RAJADA; i++) {
+        rajada[i] = new Cliente("rajada" + rodada + "_" + i, "token", null);
+        registro.putIfAbsent(rajada[i].getNome(), rajada[i]);
+      }
+      soma += registro.retrato().getClientes().length;
+      long fimRajada = System.nanoTime();
+      long reconstrucoesRajada = registro.getCanal().getReconstrucoes() - reconstrucoes;
+      for (Cliente cliente : rajada) {
+        registro.remover(cliente);
+      }
+
+      if (rodada == RODADAS - 1) {
+        System.out.printf("%d clientes: copia na trava %.1f us/broadcast | retrato %.3f us/broadcast%n", clientes,
+            (meio - inicio) / 1e3 / broadcasts, (fim - meio) / 1e3 / broadcasts);
+        System.out.printf("rajada de %d cadastros e um broadcast: %.2f ms, %d reconstrucao(oes) do retrato%n", RAJADA,
+            (fimRajada - inicioRajada) / 1e6, reconstrucoesRajada);
+      }
+    }
+    System.out.println("(soma " + soma + ")");
+  }
+}
@@ -0,0 +1,70 @@
+import java.util.*;
+import classes.*;
+
+// Mede a resolução do fim do turno (ResolucaoTurno) sem conexões: partidas com
+// jogadores que a cada turno se movem, colocam dispositivos, atacam ou passam
+// ao acaso, somando o tempo de resolução de cada turno e os eventos gerados
+// Quando uma partida acaba começa outra, até completar os turnos da rodada
+// Imprime a última de RODADAS rodadas (as primeiras servem de aquecimento)
+// Argumentos: jogadores, tamanho do tabuleiro, turnos por rodada
+public class MedirResolucao {
+  private static final int RODADAS = 3;
+
+  public static void main(String[] args) {
+    int jogadores = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int tamanho = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+    int turnosPorRodada = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+    Random random = new Random(3);
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long nanos = 0;
+      int eventos = 0;
+      int partidas = 0;
+      Map<EventoTurno.Tipo, Integer> porTipo = new EnumMap<>(EventoTurno.Tipo.class);
+      JogoPartida partida = null;
+      for (int turno = 0; turno < turnosPorRodada; turno++) {
+        if (partida == null) {
+          partida = novaPartida(++partidas, jogadores, tamanho);
+        }
+        jogar(partida, random);
+        ResolucaoTurno resolucao = new ResolucaoTurno(partida);
+        List<EventoTurno> lista = resolucao.resolver();
+        nanos += resolucao.getNanosResolucao();
+        eventos += lista.size();
+        for (EventoTurno evento : lista) {
+          porTipo.merge(evento.getTipo(), 1, Integer::sum);
+        }
+        if (resolucao.isPartidaFinalizada()) {
+          partida = null;
+        }
+      }
+      if (rodada == RODADAS - 1) {
+        System.out.printf("%d jogadores, tabuleiro %dx%d: %d turnos em %d partida(s), %.2f us/turno, %d eventos %s%n",
+            jogadores, tamanho, tamanho, turnosPorRodada, partidas, nanos / 1e3 / turnosPorRodada, eventos, porTipo);
+      }
+    }
+  }
+
+  private static JogoPartida novaPartida(int id, int jogadores, int tamanho) {
+    List<Cliente> clientes = new ArrayList<>();
+    for (int i = 0; i < jogadores; i++) {
+      clientes.add(new Cliente("jogador" + i, "token", null));
+    }
+    JogoPartida partida = new JogoPartida(id, clientes, null, tamanho);
+    partida.proximoTurno();
+    return partida;
+  }
+
+  // Ação do jogador da vez, deslocamentos pequenos em volta dele
+  private static void jogar(JogoPartida partida, Random random) {
+    String nome = partida.getJogadorTurno();
+    int acao = random.nextInt(10);
+    if (acao < 6) {
+      partida.movimento(nome, random.nextInt(3) - 1, random.nextInt(3) - 1, true);
+    } else if (acao < 8) {
+      partida.dispositivoProximidade(nome, random.nextInt(5) - 2, random.nextInt(5) - 2, true);
+    } else if (acao == 8) {
+      partida.ataque(nome, random.nextInt(9) - 4, random.nextInt(9) - 4, true);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+import java.lang.management.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import server.RodaTemporizacao;
+
+// Mede o custo de agendar os timers do servidor na RodaTemporizacao contra o
+// ScheduledThreadPoolExecutor que era usado antes:
+// - renovação do keepalive a cada comando: cancel + schedule no executor,
+//   adiar na roda
+// - prazo do turno: agendar e cancelar quando o jogador joga
+// Imprime ns e bytes alocados por operação, a última de RODADAS rodadas (as
+// primeiras servem de aquecimento), e o tamanho da fila do executor, que guarda
+// as tarefas canceladas até elas vencerem
+// Antes confere que a roda dispara um timer no prazo, respeita o adiar (mesmo
+// para depois de uma volta da roda) e não dispara um cancelado, termina com
+// código 1 se algo falhar
+// Argumentos: clientes, renovações por rodada
+public class MedirRoda {
+  private static final int RODADAS = 3;
+  private static final long KEEPALIVE_MS = 60_000;
+  private static final long TURNO_MS = 15_000;
+
+  public static void main(String[] args) throws Exception {
+    int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int renovacoes = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    if (!conferir()) {
+      System.exit(1);
+    }
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Runnable nada = () -> {
+    };
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    ScheduledFuture<?>[] futuros = new ScheduledFuture<?>[clientes];
+    RodaTemporizacao roda = new RodaTemporizacao("roda-medicao", 100, 512);
+    RodaTemporizacao.Temporizador[] temporizadores = new RodaTemporizacao.Temporizador[clientes];
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long bytes0 = threads.getCurrentThreadAllocatedBytes();
+      long inicio = System.nanoTime();
+      for (int i = 0; i < renovacoes; i++) {
+        int c = i % clientes;
+        if (futuros[c] != null) {
+          futuros[c].cancel(false);
+        }
+        futuros[c] = executor.schedule(nada, KEEPALIVE_MS, TimeUnit.MILLISECONDS);
+      }
+      long meio = System.nanoTime();
+      long bytes1 = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < renovacoes; i++) {
+        int c = i % clientes;
+        if (temporizadores[c] == null || !temporizadores[c].adiar(KEEPALIVE_MS)) {
+          temporizadores[c] = roda.agendar(nada, KEEPALIVE_MS);
+        }
+      }
+      long fim = System.nanoTime();
+      long bytes2 = threads.getCurrentThreadAllocatedBytes();
+      if (rodada == RODADAS - 1) {
+        System.out.printf("keepalive: executor %d ns %d B/renovacao (fila %d) | roda %d ns %d B/renovacao"
+            + " (timers criados %d)%n", (meio - inicio) / renovacoes, (bytes1 - bytes0) / renovacoes,
+            executor.getQueue().size(), (fim - meio) / renovacoes, (bytes2 - bytes1) / renovacoes,
+            roda.getAgendados());
+      }
+    }
+    // A fila do executor fica com as renovações canceladas, limpa antes do turno
+    executor.shutdownNow();
+    executor = new ScheduledThreadPoolExecutor(1);
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long bytes0 = threads.getCurrentThreadAllocatedBytes();
+      long inicio = System.nanoTime();
+      for (int i = 0; i < renovacoes; i++) {
+        executor.schedule(nada, TURNO_MS, TimeUnit.MILLISECONDS).cancel(false);
+      }
+      long meio = System.nanoTime();
+      long bytes1 = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < renovacoes; i++) {
+        roda.agendar(nada, TURNO_MS).cancelar();
+      }
+      long fim = System.nanoTime();
+      long bytes2 = threads.getCurrentThreadAllocatedBytes();
+      if (rodada == RODADAS - 1) {
+        System.out.printf("turno: executor %d ns %d B/agendamento | roda %d ns %d B/agendamento%n",
+            (meio - inicio) / renovacoes, (bytes1 - bytes0) / renovacoes, (fim - meio) / renovacoes,
+            (bytes2 - bytes1) / renovacoes);
+      }
+    }
+    executor.shutdownNow();
+  }
+
+  // Uma roda de 64 slots de 10ms dá uma volta em 640ms, o timer adiado para
+  // 900ms tem que esperar a segunda volta
+  private static boolean conferir() throws InterruptedException {
+    RodaTemporizacao roda = new RodaTemporizacao("roda-conferencia", 10, 64);
+    long inicio = System.nanoTime();
+    AtomicLong disparoCurto = new AtomicLong();
+    AtomicLong disparoAdiado = new AtomicLong();
+    AtomicInteger disparosCancelado = new AtomicInteger();
+    roda.agendar(() -> disparoCurto.set(System.nanoTime()), 50);
+    roda.agendar(() -> disparoAdiado.set(System.nanoTime()), 50).adiar(900);
+    roda.agendar(disparosCancelado::incrementAndGet, 30).cancelar();
+    Thread.sleep(1200);
+
+    long msCurto = TimeUnit.NANOSECONDS.toMillis(disparoCurto.get() - inicio);
+    long msAdiado = TimeUnit.NANOSECONDS.toMillis(disparoAdiado.get() - inicio);
+    System.out.println("Conferencia: curto em " + msCurto + "ms, adiado em " + msAdiado + "ms, cancelado disparou "
+        + disparosCancelado.get() + " vezes");
+    boolean certo = true;
+    if (disparoCurto.get() == 0 || msCurto < 50 || msCurto > 200) {
+      System.err.println("FALHOU: o timer de 50ms nao disparou no prazo");
+      certo = false;
+    }
+    if (disparoAdiado.get() == 0 || msAdiado < 900 || msAdiado > 1100) {
+      System.err.println("FALHOU: o timer adiado para 900ms nao disparou no novo prazo");
+      certo = false;
+    }
+    if (disparosCancelado.get() != 0) {
+      System.err.println("FALHOU: o timer cancelado disparou");
+      certo = false;
+    }
+    return certo;
+  }
+}
@@ -0,0 +1,78 @@
+import java.util.*;
+import java.util.concurrent.*;
+import classes.*;
+import server.RodaTemporizacao;
+
+// Mede os dois lados do keepalive por varredura: o custo de cada comando
+// (registrarAtividade só grava o horário no Cliente) contra o adiar do timer na
+// RodaTemporizacao que era usado antes, e o tempo de uma passada da varredura
+// pelo mapa de clientes, do mesmo jeito que o GameManager.varrerKeepAlives
+// Uma parte dos clientes fica sem atividade para a passada achar expirados
+// Imprime a última de RODADAS rodadas (as primeiras servem de aquecimento)
+// Argumentos: clientes, porcentagem de clientes inativos
+public class MedirVarredura {
+  private static final int RODADAS = 5;
+  private static final int COMANDOS = 10_000_000;
+  private static final long TEMPO_INATIVO_MS = 50;
+
+  public static void main(String[] args) throws Exception {
+    int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int porcentagemInativos = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+    ConcurrentMap<String, Cliente> mapa = new ConcurrentHashMap<>();
+    Cliente[] lista = new Cliente[clientes];
+    for (int i = 0; i < clientes; i++) {
+      lista[i] = new Cliente("cliente" + i, "token", null);
+      mapa.put(lista[i].getNome(), lista[i]);
+    }
+    RodaTemporizacao roda = new RodaTemporizacao("roda-medicao", 100, 512);
+    RodaTemporizacao.Temporizador[] temporizadores = new RodaTemporizacao.Temporizador[clientes];
+    Runnable nada = () -> {
+    };
+    long limite = TimeUnit.MILLISECONDS.toNanos(TEMPO_INATIVO_MS);
+    int ativos = clientes - clientes / 100 * porcentagemInativos;
+
+    for (int rodada = 0; rodada < RODADAS; rodada++) {
+      long inicio = System.nanoTime();
+      for (int i = 0; i < COMANDOS; i++) {
+        lista[i % clientes].registrarAtividade();
+      }
+      long meio = System.nanoTime();
+      for (int i = 0; i < COMANDOS; i++) {
+        int c = i % clientes;
+        if (temporizadores[c] == null || !temporizadores[c].adiar(60_000)) {
+          temporizadores[c] = roda.agendar(nada, 60_000);
+        }
+      }
+      long fim = System.nanoTime();
+
+      // Só os primeiros clientes têm atividade depois da espera
+      Thread.sleep(TEMPO_INATIVO_MS * 2);
+      for (int i = 0; i < ativos; i++) {
+        lista[i].registrarAtividade();
+      }
+      long inicioPassada = System.nanoTime();
+      List<Cliente> expirados = varrer(mapa, limite);
+      long fimPassada = System.nanoTime();
+      if (rodada == RODADAS - 1) {
+        System.out.printf("por comando: registrarAtividade %.1f ns | adiar na roda %.1f ns%n",
+            (double) (meio - inicio) / COMANDOS, (double) (fim - meio) / COMANDOS);
+        System.out.printf("passada por %d clientes: %.2f ms (%d expirados)%n", clientes,
+            (fimPassada - inicioPassada) / 1e6, expirados == null ? 0 : expirados.size());
+      }
+    }
+  }
+
+  private static List<Cliente> varrer(ConcurrentMap<String, Cliente> mapa, long limite) {
+    long agora = System.nanoTime();
+    List<Cliente> expirados = null;
+    for (Cliente cliente : mapa.values()) {
+      if (agora - cliente.getUltimaAtividade() > limite) {
+        if (expirados == null) {
+          expirados = new ArrayList<>();
+        }
+        expirados.add(cliente);
+      }
+    }
+    return expirados;
+  }
+}
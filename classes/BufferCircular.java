@@ -0,0 +1,38 @@
+package classes;
+
+// Buffer circular de tamanho fixo: quando enche, cada item novo substitui o mais
+// antigo, então a memória usada não cresce com o tempo de vida de quem o usa
+// Não é thread-safe, o dos mísseis só é usado pelas tarefas da caixa da
+// partida (sempre na thread do shard dela)
+public class BufferCircular<T> {
+  private final Object[] itens;
+  // Posição onde o próximo item será escrito
+  private int proximo = 0;
+  private int quantidade = 0;
+
+  public BufferCircular(int capacidade) {
+    this.itens = new Object[capacidade];
+  }
+
+  public void adicionar(T item) {
+    itens[proximo] = item;
+    proximo = (proximo + 1) % itens.length;
+    if (quantidade < itens.length) {
+      quantidade++;
+    }
+  }
+
+  public int tamanho() {
+    return this.quantidade;
+  }
+
+  // Item guardado a partir do mais recente: 0 é o último adicionado e
+  // tamanho() - 1 o mais antigo que ainda está no buffer
+  @SuppressWarnings("unchecked")
+  public T recente(int indice) {
+    if (indice < 0 || indice >= quantidade) {
+      throw new IndexOutOfBoundsException("Indice " + indice + " fora do buffer de " + quantidade + " itens");
+    }
+    return (T) itens[(proximo - 1 - indice + itens.length) % itens.length];
+  }
+}
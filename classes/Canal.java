@@ -0,0 +1,143 @@
+package classes;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+// Canal de publicação: uma mensagem publicada vai para todos os inscritos, sem
+// olhar os outros clientes do servidor (o lobby e cada partida em andamento têm
+// o seu canal)
+// Os inscritos ficam num ConcurrentHashMap pelo nome e a publicação percorre um
+// retrato: um array imutável com os inscritos e a versão do canal em que foi
+// montado. Inscrever ou desinscrever só incrementa a versão e o retrato é
+// montado de novo na próxima leitura, então as publicações entre duas mudanças
+// usam o mesmo array, sem copiar nada e sem trava
+public class Canal {
+  // Quantidade de destinatários de cada publicação, somando todos os canais
+  private static final Histograma DESTINATARIOS = new Histograma();
+
+  private final String nome;
+  private final ConcurrentMap<String, Cliente> inscritos = new ConcurrentHashMap<>();
+  // Incrementada a cada inscrição ou saída
+  private final AtomicLong versao = new AtomicLong();
+  private volatile Retrato retrato = new Retrato(new Cliente[0], 0);
+  // Só para não montar o mesmo retrato em duas threads ao mesmo tempo
+  private final ReentrantLock travaRetrato = new ReentrantLock();
+  private final AtomicLong reconstrucoes = new AtomicLong();
+  private final AtomicLong publicacoes = new AtomicLong();
+
+  public Canal(String nome) {
+    this.nome = nome;
+  }
+
+  public String getNome() {
+    return this.nome;
+  }
+
+  // Retorna false se já havia um inscrito com o mesmo nome
+  public boolean inscrever(Cliente cliente) {
+    return inscreverSeAusente(cliente) == null;
+  }
+
+  // Retorna o inscrito que já tinha o nome, ou null se o cliente foi inscrito
+  public Cliente inscreverSeAusente(Cliente cliente) {
+    Cliente existente = inscritos.putIfAbsent(cliente.getNome(), cliente);
+    if (existente == null) {
+      versao.incrementAndGet();
+    }
+    return existente;
+  }
+
+  // Só desinscreve se o nome ainda for deste cliente
+  public boolean desinscrever(Cliente cliente) {
+    if (inscritos.remove(cliente.getNome(), cliente)) {
+      versao.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  public Cliente buscar(String nome) {
+    return inscritos.get(nome);
+  }
+
+  public int tamanho() {
+    return inscritos.size();
+  }
+
+  // Envia a mensagem para todos os inscritos, descarregando cada conexão uma
+  // única vez no fim
+  public void publicar(Mensagem mensagem) {
+    Cliente[] clientes = retrato().getClientes();
+    publicacoes.incrementAndGet();
+    DESTINATARIOS.registrar(clientes.length);
+    Conexao.iniciarLote();
+    try {
+      for (Cliente cliente : clientes) {
+        cliente.enviar(mensagem);
+      }
+    } finally {
+      Conexao.finalizarLote();
+    }
+  }
+
+  // Retrato dos inscritos na versão atual do canal
+  public Retrato retrato() {
+    Retrato atual = retrato;
+    if (atual.versao == versao.get()) {
+      return atual;
+    }
+    travaRetrato.lock();
+    try {
+      atual = retrato;
+      // A versão é lida antes de percorrer o mapa: se algo mudar durante a
+      // montagem o retrato fica com a versão antiga e é montado de novo depois
+      long versaoAtual = versao.get();
+      if (atual.versao == versaoAtual) {
+        return atual;
+      }
+      atual = new Retrato(inscritos.values().toArray(new Cliente[0]), versaoAtual);
+      retrato = atual;
+      reconstrucoes.incrementAndGet();
+      return atual;
+    } finally {
+      travaRetrato.unlock();
+    }
+  }
+
+  public long getVersao() {
+    return versao.get();
+  }
+
+  public long getReconstrucoes() {
+    return reconstrucoes.get();
+  }
+
+  public long getPublicacoes() {
+    return publicacoes.get();
+  }
+
+  public static Histograma getHistogramaDestinatarios() {
+    return DESTINATARIOS;
+  }
+
+  // Inscritos do canal numa versão, o array é compartilhado por todos que
+  // pegaram o mesmo retrato e não deve ser alterado
+  public static class Retrato {
+    private final Cliente[] clientes;
+    private final long versao;
+
+    private Retrato(Cliente[] clientes, long versao) {
+      this.clientes = clientes;
+      this.versao = versao;
+    }
+
+    public Cliente[] getClientes() {
+      return this.clientes;
+    }
+
+    public long getVersao() {
+      return this.versao;
+    }
+  }
+}
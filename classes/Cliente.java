@@ -1,21 +1,35 @@
 package classes;
 
-import java.io.*;
-import java.net.*;
-
 public class Cliente {
   private String nome;
   private String token;
   private int idPartida; // ID da partida que o cliente está participando
   private String jogadorDesafiado; // Nome do jogador que este cliente desafiou
-  private Socket connectionSocket;
+  private int tamanhoDesafio; // Tamanho do tabuleiro pedido no desafio
+  // Partida em andamento do cliente (null se não estiver jogando), evita buscar
+  // a partida pelo id a cada comando
+  private volatile JogoPartida jogoPartida;
+  // Trocada pelo RETOMAR e pelo atualizarConexao na thread de outra conexão e
+  // lida sem trava pelos shards, pela roda e pelo lobby, volatile para eles
+  // enxergarem a conexão nova em vez de continuar enviando para a fechada
+  private volatile Conexao conexao;
+  // true se o cliente pediu DELTALOBBY e recebe só as mudanças do lobby em vez
+  // das listas completas
+  private volatile boolean lobbyIncremental;
+  // true depois que o cliente saiu ou foi desconectado, uma conexão que ainda
+  // estiver ligada a ele não pode mais usá-lo como sessão
+  private volatile boolean removido;
+  // Instante (System.nanoTime) do último comando do cliente, usado pela
+  // varredura do keepalive
+  private volatile long ultimaAtividade = System.nanoTime();
 
-  public Cliente(String nome, String token, Socket connectionSocket) {
+  public Cliente(String nome, String token, Conexao conexao) {
     this.nome = nome;
     this.token = token;
     this.idPartida = -1;
     this.jogadorDesafiado = null;
-    this.connectionSocket = connectionSocket;
+    this.tamanhoDesafio = Constants.TAMANHO_TABULEIRO;
+    this.conexao = conexao;
   }
 
   public String getNome() {
@@ -34,12 +48,44 @@ public class Cliente {
     this.idPartida = idPartida;
   }
 
-  public Socket getConnectionSocket() {
-    return this.connectionSocket;
+  public JogoPartida getJogoPartida() {
+    return this.jogoPartida;
+  }
+
+  public void setJogoPartida(JogoPartida jogoPartida) {
+    this.jogoPartida = jogoPartida;
+  }
+
+  public Conexao getConexao() {
+    return this.conexao;
+  }
+
+  public void setConexao(Conexao conexao) {
+    this.conexao = conexao;
+  }
+
+  public boolean isLobbyIncremental() {
+    return this.lobbyIncremental;
+  }
+
+  public void setLobbyIncremental(boolean lobbyIncremental) {
+    this.lobbyIncremental = lobbyIncremental;
+  }
+
+  public boolean isRemovido() {
+    return this.removido;
+  }
+
+  public void setRemovido(boolean removido) {
+    this.removido = removido;
   }
 
-  public void setConnectionSocket(Socket socket) {
-    this.connectionSocket = socket;
+  public void registrarAtividade() {
+    this.ultimaAtividade = System.nanoTime();
+  }
+
+  public long getUltimaAtividade() {
+    return this.ultimaAtividade;
   }
 
   public String getJogadorDesafiado() {
@@ -50,6 +96,14 @@ public class Cliente {
     this.jogadorDesafiado = jogadorDesafiado;
   }
 
+  public int getTamanhoDesafio() {
+    return this.tamanhoDesafio;
+  }
+
+  public void setTamanhoDesafio(int tamanhoDesafio) {
+    this.tamanhoDesafio = tamanhoDesafio;
+  }
+
   // Esse método vai ser <default> para ser acessado pela classe filha (Jogador)
   String getToken() {
     return this.token;
@@ -59,26 +113,19 @@ public class Cliente {
   // Código gerado pelo Copilot ao pedir por um método único de envio de mensagem
   // ao cliente
   public boolean enviarLinha(String tipo, String codigo, String mensagem, String valor) {
-    synchronized (this) {
-      Socket socket = this.connectionSocket;
-      if (socket == null || socket.isClosed() || socket.isOutputShutdown()) {
-        return false;
-      }
-      try {
-        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
-        String spr = Constants.SEPARADOR;
-        String linha = tipo + spr + codigo + spr + mensagem + spr + valor;
-        out.writeBytes(linha + "\n");
-        out.flush();
-        return true;
-      } catch (IOException e) {
-        System.err.println("Erro ao enviar para o cliente " + this.nome + ": " + e.getMessage());
-        try {
-          socket.close();
-        } catch (IOException ignored) {
-        }
-        return false;
-      }
+    Conexao conexao = this.conexao;
+    if (conexao == null || conexao.isFechada()) {
+      return false;
+    }
+    return conexao.enviarLinha(tipo, codigo, mensagem, valor);
+  }
+
+  // Envia uma mensagem já codificada, usado nas notificações para vários clientes
+  public boolean enviar(Mensagem mensagem) {
+    Conexao conexao = this.conexao;
+    if (conexao == null || conexao.isFechada()) {
+      return false;
     }
+    return conexao.enviar(mensagem);
   }
 }
\ No newline at end of file
@@ -0,0 +1,225 @@
+package classes;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+// Classe que representa a conexão de um cliente com o servidor, assim o
+// servidor pode enviar mensagens sem saber se a conexão é um socket bloqueante
+// (uma thread por cliente) ou um canal NIO (poucas threads de I/O)
+// Cada conexão tem uma fila de saída limitada com as linhas já codificadas em
+// bytes (Mensagem, que pode ser compartilhada entre clientes), quem envia só
+// coloca a linha na fila e o escritor da conexão (os EscritoresSocket nos
+// modos threads e virtual, o loop de I/O no modo nio) é quem escreve no
+// socket, assim um cliente lento nunca segura a partida
+// O escritor só é acordado no fim do comando ou da notificação que gerou as
+// linhas, veja iniciarLote/finalizarLote
+public abstract class Conexao {
+  // Lote de envio da thread atual: conexões que receberam linhas e ainda
+  // precisam ser descarregadas quando o lote terminar
+  private static class LoteEnvio {
+    int profundidade = 0;
+    List<Conexao> conexoes = new ArrayList<>();
+  }
+
+  private static final ThreadLocal<LoteEnvio> LOTE = ThreadLocal.withInitial(LoteEnvio::new);
+  // true nas threads que não podem esperar espaço na fila de um cliente, veja
+  // proibirBloqueio
+  private static final ThreadLocal<Boolean> SEM_BLOQUEIO = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+  // true se a conexão já está em algum lote esperando ser descarregada
+  private final AtomicBoolean descarregamentoPendente = new AtomicBoolean(false);
+
+  // Fila de saída, ReentrantLock em vez de synchronized para não prender a
+  // thread carregadora no modo virtual
+  private final ReentrantLock travaFila = new ReentrantLock();
+  private final Condition filaComEspaco = travaFila.newCondition();
+  private final ArrayDeque<Mensagem> fila = new ArrayDeque<>();
+  private final AtomicLong mensagensDescartadas = new AtomicLong();
+
+  // Cliente ligado a esta conexão pelo CADASTRAR ou pelo RETOMAR, os comandos
+  // recebidos por ela podem omitir o nome e o token
+  private volatile Cliente sessao;
+  // Recebe o código de cada linha que o enviarLinha colocou na fila (respostas
+  // e avisos para este cliente), usado pelas métricas do servidor
+  private volatile Consumer<String> observadorRespostas;
+
+  // Acorda o escritor para enviar ao cliente tudo que estiver na fila
+  protected abstract void descarregar();
+
+  // Fecha a conexão com o cliente depois de enviar o que já está na fila
+  public abstract void fechar();
+
+  // Fecha a conexão descartando o que estiver na fila
+  protected abstract void fecharImediatamente();
+
+  public abstract boolean isFechada();
+
+  // Endereço do cliente no formato ip:porta, usado apenas para logs
+  public abstract String getEndereco();
+
+  // Coloca a linha no formato tipo|codigo|mensagem|valor na fila do cliente
+  public boolean enviarLinha(String tipo, String codigo, String mensagem, String valor) {
+    if (!enviar(new Mensagem(tipo, codigo, mensagem, valor))) {
+      return false;
+    }
+    Consumer<String> observador = this.observadorRespostas;
+    if (observador != null) {
+      observador.accept(codigo);
+    }
+    return true;
+  }
+
+  // Coloca a mensagem já codificada na fila do cliente, se a thread estiver
+  // dentro de um lote o escritor só é acordado no fim do lote
+  // Retorna false se a conexão estiver fechada ou a mensagem foi descartada
+  public boolean enviar(Mensagem mensagem) {
+    if (isFechada()) {
+      return false;
+    }
+    if (!enfileirar(mensagem)) {
+      return false;
+    }
+    LoteEnvio lote = LOTE.get();
+    if (lote.profundidade == 0) {
+      descarregar();
+    } else if (descarregamentoPendente.compareAndSet(false, true)) {
+      lote.conexoes.add(this);
+    }
+    return true;
+  }
+
+  // Coloca a mensagem na fila aplicando a POLITICA_FILA_CHEIA se ela estiver cheia
+  private boolean enfileirar(Mensagem mensagem) {
+    travaFila.lock();
+    try {
+      while (fila.size() >= Constants.TAMANHO_FILA_SAIDA) {
+        int politica = politicaFilaCheia();
+        if (politica == Constants.POLITICA_FILA_DESCARTAR_CHAT && mensagem.isChat()) {
+          mensagensDescartadas.incrementAndGet();
+          return false;
+        }
+        if (politica != Constants.POLITICA_FILA_BLOQUEAR || !esperarEspaco()) {
+          break;
+        }
+      }
+      if (fila.size() < Constants.TAMANHO_FILA_SAIDA) {
+        fila.addLast(mensagem);
+        return true;
+      }
+    } finally {
+      travaFila.unlock();
+    }
+    // O cliente não está lendo o que enviamos, desconecta para não acumular
+    System.err.println("Fila de saida cheia para o cliente " + getEndereco() + ", desconectando");
+    mensagensDescartadas.incrementAndGet();
+    fecharImediatamente();
+    return false;
+  }
+
+  // Política da thread atual: BLOQUEAR vira DESCARTAR_CHAT nas threads que não
+  // podem esperar
+  private static int politicaFilaCheia() {
+    if (Constants.POLITICA_FILA_CHEIA == Constants.POLITICA_FILA_BLOQUEAR && SEM_BLOQUEIO.get()) {
+      return Constants.POLITICA_FILA_DESCARTAR_CHAT;
+    }
+    return Constants.POLITICA_FILA_CHEIA;
+  }
+
+  // Espera o escritor liberar espaço na fila, deve ser chamado com a travaFila
+  // Retorna false se o tempo acabou ou a conexão foi fechada
+  private boolean esperarEspaco() {
+    // O escritor pode estar esperando o fim do lote para ser acordado
+    descarregar();
+    try {
+      return filaComEspaco.await(Constants.TEMPO_MAX_BLOQUEIO_FILA, TimeUnit.MILLISECONDS) && !isFechada();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  // Usado pelo escritor: retira a próxima mensagem da fila ou null se estiver vazia
+  protected Mensagem retirarMensagem() {
+    travaFila.lock();
+    try {
+      Mensagem mensagem = fila.pollFirst();
+      if (mensagem != null) {
+        filaComEspaco.signal();
+      }
+      return mensagem;
+    } finally {
+      travaFila.unlock();
+    }
+  }
+
+  // Descarta o que estiver na fila, usado quando a conexão é fechada
+  protected void limparFila() {
+    travaFila.lock();
+    try {
+      fila.clear();
+      filaComEspaco.signalAll();
+    } finally {
+      travaFila.unlock();
+    }
+  }
+
+  public Cliente getSessao() {
+    return this.sessao;
+  }
+
+  public void setSessao(Cliente sessao) {
+    this.sessao = sessao;
+  }
+
+  public void setObservadorRespostas(Consumer<String> observadorRespostas) {
+    this.observadorRespostas = observadorRespostas;
+  }
+
+  public int getTamanhoFila() {
+    travaFila.lock();
+    try {
+      return fila.size();
+    } finally {
+      travaFila.unlock();
+    }
+  }
+
+  // Mensagens descartadas por causa da fila cheia
+  public long getMensagensDescartadas() {
+    return mensagensDescartadas.get();
+  }
+
+  // Marca a thread atual como uma que não pode esperar espaço na fila de um
+  // cliente: as threads dos shards das partidas (esperar seguraria todas as
+  // partidas do shard) e os loops do modo nio (o loop é o próprio escritor e
+  // esperaria por ele mesmo)
+  public static void proibirBloqueio() {
+    SEM_BLOQUEIO.set(Boolean.TRUE);
+  }
+
+  // Abre um lote de envio na thread atual, lotes podem ser aninhados (um comando
+  // que faz uma notificação para todos), só o mais externo descarrega
+  public static void iniciarLote() {
+    LOTE.get().profundidade++;
+  }
+
+  // Fecha o lote aberto por iniciarLote, se for o mais externo descarrega uma
+  // única vez cada conexão que recebeu linhas durante o lote
+  public static void finalizarLote() {
+    LoteEnvio lote = LOTE.get();
+    lote.profundidade--;
+    if (lote.profundidade > 0) {
+      return;
+    }
+    List<Conexao> conexoes = lote.conexoes;
+    for (int i = 0; i < conexoes.size(); i++) {
+      Conexao conexao = conexoes.get(i);
+      conexao.descarregamentoPendente.set(false);
+      conexao.descarregar();
+    }
+    conexoes.clear();
+  }
+}
@@ -4,16 +4,78 @@ package classes;
 // (Java não suporta declarações de constantes fora de classes)
 public class Constants {
   public static final int PORTA_SERVIDOR = 9876;
+  // Porta HTTP das estatísticas do servidor (/estatisticas em JSON e /metrics
+  // no formato do Prometheus), só aceita conexões locais. 0 desativa, a porta
+  // também pode ser passada no terceiro argumento do Server
+  public static final int PORTA_ADMIN = 0;
+  // Modo de atendimento das conexões, pode ser trocado pelo primeiro argumento
+  // ao iniciar o servidor: "threads" (uma thread por cliente), "virtual" (uma
+  // thread virtual por cliente, Java 21+) ou "nio" (poucos loops de I/O não
+  // bloqueantes atendendo todos os clientes)
+  public static final String MODO_SERVIDOR = "threads";
+  // Quantidade de loops de I/O usados no modo nio
+  public static final int NUMERO_LOOPS_NIO = 4;
+  // Relatório de pinning das threads virtuais (modo virtual)
+  public static final int LIMITE_PINNING_MS = 1; // só conta pinning acima disso
+  public static final int INTERVALO_RELATORIO_PINNING = 30; // em segundos
+  // Fila de saída de cada cliente, a lógica do jogo só coloca as mensagens na
+  // fila e quem escreve no socket é o escritor da conexão
+  public static final int TAMANHO_FILA_SAIDA = 1024; // em mensagens
+  // Loops de escrita (não bloqueante) compartilhados pelas conexões do modo
+  // threads
+  public static final int NUMERO_ESCRITORES_SOCKET = 4;
+  // Conexão do modo threads cujo socket não aceita nenhum byte por mais que
+  // isso (cliente que não lê) é fechada
+  public static final int TEMPO_MAX_ESCRITA_SOCKET = 500; // em milissegundos
+  // O que fazer quando a fila de um cliente lento enche:
+  // DESCARTAR_CHAT descarta as mensagens de chat e desconecta nas outras,
+  // DESCONECTAR desconecta o cliente em qualquer mensagem,
+  // BLOQUEAR faz quem está enviando esperar até TEMPO_MAX_BLOQUEIO_FILA e então
+  // desconecta. As threads que não podem esperar (shards das partidas e loops
+  // do modo nio) usam DESCARTAR_CHAT mesmo com BLOQUEAR
+  public static final int POLITICA_FILA_DESCARTAR_CHAT = 0;
+  public static final int POLITICA_FILA_DESCONECTAR = 1;
+  public static final int POLITICA_FILA_BLOQUEAR = 2;
+  public static final int POLITICA_FILA_CHEIA = POLITICA_FILA_DESCARTAR_CHAT;
+  public static final int TEMPO_MAX_BLOQUEIO_FILA = 2000; // em milissegundos
+  // Tamanho padrão do tabuleiro, cada partida pode ter o seu (o desafiante
+  // pode escolher no DESAFIAR) entre TAMANHO_TABULEIRO_MIN e TAMANHO_TABULEIRO_MAX
   public static final int TAMANHO_TABULEIRO = 16;
+  public static final int TAMANHO_TABULEIRO_MIN = 8;
+  public static final int TAMANHO_TABULEIRO_MAX = 1024;
+  // Lado das células do índice espacial das partidas (em casas)
+  public static final int TAMANHO_CELULA_GRADE = 8;
   public static final int NUMERO_JOGADORES = 2;
   public static final int NUMERO_MAX_DISPOSITIVOS_JOGADOR = 4;
+  // Quantos mísseis cada partida guarda, os mais antigos são descartados (cada
+  // turno lança no máximo um, só os dois últimos turnos são consultados)
+  public static final int HISTORICO_MISSEIS = 8;
   public static final int NUMERO_PARTIDAS = 6;
   public static final int TAMANHOMAXNOMECLIENTE = 25;
   public static final int TEMPO_TURNO = 15; // em segundos
+  // Shards (threads) que executam as partidas em andamento, cada partida fica
+  // sempre no mesmo shard. 0 usa um shard por núcleo
+  public static final int NUMERO_SHARDS_PARTIDAS = 0;
+  // Relatório de tarefas, fila e utilização de cada shard
+  public static final int INTERVALO_RELATORIO_SHARDS = 30; // em segundos, 0 desativa
+  // Relatório de latência e quantidade de cada comando e dos códigos de erro
+  public static final int INTERVALO_RELATORIO_METRICAS = 60; // em segundos, 0 desativa
   public static final boolean KEEPALIVE = true; // Ativa ou desativa o keepalive
+  // Janela em que as mudanças do lobby são juntadas antes de serem enviadas,
+  // 0 envia cada mudança na hora
+  public static final int JANELA_LOBBY_MS = 50; // em milissegundos
 
   // Quanto até um cliente ser desconectado pelo servidor
   public static final int TEMPO_KEEPALIVE = 60; // em segundos
+  // De quanto em quanto tempo os clientes inativos são procurados, um cliente
+  // pode ficar até esse intervalo a mais conectado depois do TEMPO_KEEPALIVE
+  public static final int INTERVALO_VARREDURA_KEEPALIVE_MS = 1000; // em milissegundos
+
+  // Roda de temporização dos timers de turno: duração de cada tick
+  // (os timers vencem com até um tick de atraso) e quantidade de posições
+  // (timers mais longos que SLOTS * RESOLUCAO dão mais de uma volta na roda)
+  public static final int RESOLUCAO_TEMPORIZADORES_MS = 100; // em milissegundos
+  public static final int SLOTS_TEMPORIZADORES = 512;
 
   // Proximidade inicial dos jogadores no ínicio da partida (gerado aleatoriamente
   // mas seguindo essa restrição)
@@ -61,6 +123,8 @@ public class Constants {
   public static final String TIPOSAIRPARTIDA = "SAIRPARTIDA";
   public static final String TIPOSAIR = "SAIR";
   public static final String TIPOKEEPALIVE = "KEEPALIVE";
+  public static final String TIPODELTALOBBY = "DELTALOBBY";
+  public static final String TIPORETOMAR = "RETOMAR";
   // Nome das mensagens enviadas pelo servidor (adicionais do servidor)
   public static final String TIPORESERVADOPARTIDA = "RESERVADOPARTIDA";
   public static final String TIPOINICIOPARTIDA = "INICIOPARTIDA";
@@ -73,4 +137,9 @@ public class Constants {
   public static final String TIPOFIMPARTIDA = "FIMPARTIDA";
   public static final String TIPODESCONECTADO = "DESCONECTADO";
   public static final String TIPOERRO = "ERRO";
+  // Eventos do lobby incremental (clientes que enviaram DELTALOBBY)
+  public static final String TIPOJOGADORENTROU = "JOGADORENTROU";
+  public static final String TIPOJOGADORSAIU = "JOGADORSAIU";
+  public static final String TIPOPARTIDAATUALIZADA = "PARTIDAATUALIZADA";
+  public static final String TIPOLOBBYATUALIZADO = "LOBBYATUALIZADO";
 }
@@ -1,5 +1,7 @@
 package classes;
 
+import java.util.*;
+
 public class DispositivoProximidade implements IDetector {
   // Identificador discriminante do dispositivo de um jogador (1 a
   // numMaxDispositivos)
@@ -7,6 +9,15 @@ public class DispositivoProximidade implements IDetector {
   private Posicao posicao;
   private int alcance;
   private Jogador jogadorDono;
+  // Resultado da última detecção, guardado entre os turnos. Só é refeito quando
+  // algum jogador entra, sai ou se mexe dentro do alcance (ver
+  // JogoPartida.atualizarDeteccoes)
+  private List<Jogador> jogadoresDetectados = Collections.emptyList();
+  // Valor da mensagem DETECTADO montado a partir do resultado, null se precisa
+  // ser montado de novo
+  private String valorDeteccao;
+  // true se está na lista de dispositivos a reavaliar da partida
+  private boolean pendente;
 
   public DispositivoProximidade(int x, int y, int alcance, Jogador jogadorDono, int num) {
     this.posicao = new Posicao(x, y);
@@ -31,6 +42,40 @@ public class DispositivoProximidade implements IDetector {
     return this.num;
   }
 
+  public List<Jogador> getJogadoresDetectados() {
+    return this.jogadoresDetectados;
+  }
+
+  // Troca o resultado da detecção, o valor da mensagem só é descartado se os
+  // jogadores detectados mudaram
+  void setJogadoresDetectados(List<Jogador> jogadoresDetectados) {
+    if (!jogadoresDetectados.equals(this.jogadoresDetectados)) {
+      this.jogadoresDetectados = jogadoresDetectados;
+      this.valorDeteccao = null;
+    }
+  }
+
+  public String getValorDeteccao() {
+    return this.valorDeteccao;
+  }
+
+  public void setValorDeteccao(String valorDeteccao) {
+    this.valorDeteccao = valorDeteccao;
+  }
+
+  boolean isPendente() {
+    return this.pendente;
+  }
+
+  void setPendente(boolean pendente) {
+    this.pendente = pendente;
+  }
+
+  // Retorna true se a casa está dentro do alcance do dispositivo
+  boolean alcanca(int x, int y) {
+    return this.posicao.distanciaPermitida(x, y, this.alcance, getModoAlcance());
+  }
+
   public int getModoAlcance() {
     return Constants.MODO_ALCANCE_DISPOSITIVO_PROXIMIDADE;
   }
@@ -0,0 +1,92 @@
+package classes;
+
+import java.util.*;
+
+// Acontecimento do fim de um turno (ver ResolucaoTurno): só os dados do que
+// aconteceu, sem mensagem montada. Quem envia para os jogadores é o
+// GameManager, depois que a resolução do turno terminou
+public class EventoTurno {
+  public enum Tipo {
+    // Jogadores acertados por um míssil, para o dono do míssil
+    ACERTO,
+    // Jogador acertado por um míssil, para ele mesmo
+    MORTE,
+    // Jogadores detectados por um dispositivo, para o dono do dispositivo
+    DETECCAO,
+    // Novo jogador do turno, para todos da partida
+    TURNO,
+    // Único jogador restante, para ele mesmo
+    VITORIA,
+    // Fim da partida, para todos (o vencedor pode ser null)
+    FIM_PARTIDA
+  }
+
+  private final Tipo tipo;
+  // Jogador que recebe o evento, null nos eventos para todos da partida
+  private final Jogador destinatario;
+  // Dono do míssil (ACERTO e MORTE) ou vencedor (VITORIA e FIM_PARTIDA)
+  private final Jogador jogador;
+  // Jogadores acertados (ACERTO)
+  private final List<Jogador> jogadores;
+  private final DispositivoProximidade dispositivo;
+  // Nome do jogador do turno (TURNO)
+  private final String nomeTurno;
+
+  private EventoTurno(Tipo tipo, Jogador destinatario, Jogador jogador, List<Jogador> jogadores,
+      DispositivoProximidade dispositivo, String nomeTurno) {
+    this.tipo = tipo;
+    this.destinatario = destinatario;
+    this.jogador = jogador;
+    this.jogadores = jogadores;
+    this.dispositivo = dispositivo;
+    this.nomeTurno = nomeTurno;
+  }
+
+  public static EventoTurno acerto(Jogador dono, List<Jogador> acertados) {
+    return new EventoTurno(Tipo.ACERTO, dono, dono, acertados, null, null);
+  }
+
+  public static EventoTurno morte(Jogador acertado, Jogador dono) {
+    return new EventoTurno(Tipo.MORTE, acertado, dono, null, null, null);
+  }
+
+  public static EventoTurno deteccao(DispositivoProximidade dispositivo) {
+    return new EventoTurno(Tipo.DETECCAO, dispositivo.getJogadorDono(), null, null, dispositivo, null);
+  }
+
+  public static EventoTurno turno(String nomeTurno) {
+    return new EventoTurno(Tipo.TURNO, null, null, null, null, nomeTurno);
+  }
+
+  public static EventoTurno vitoria(Jogador vencedor) {
+    return new EventoTurno(Tipo.VITORIA, vencedor, vencedor, null, null, null);
+  }
+
+  public static EventoTurno fimPartida(Jogador vencedor) {
+    return new EventoTurno(Tipo.FIM_PARTIDA, null, vencedor, null, null, null);
+  }
+
+  public Tipo getTipo() {
+    return this.tipo;
+  }
+
+  public Jogador getDestinatario() {
+    return this.destinatario;
+  }
+
+  public Jogador getJogador() {
+    return this.jogador;
+  }
+
+  public List<Jogador> getJogadores() {
+    return this.jogadores;
+  }
+
+  public DispositivoProximidade getDispositivo() {
+    return this.dispositivo;
+  }
+
+  public String getNomeTurno() {
+    return this.nomeTurno;
+  }
+}
@@ -0,0 +1,83 @@
+package classes;
+
+import java.util.*;
+
+// Índice espacial em grade uniforme: o tabuleiro é dividido em células de
+// tamanhoCelula x tamanhoCelula casas e cada célula guarda os itens (jogadores
+// ou dispositivos) que estão nela
+// Uma busca por alcance só olha as células que cobrem a área, então o custo
+// depende do alcance e não da quantidade de itens na partida
+// Posições fora do tabuleiro ficam na célula da borda mais próxima
+// Não é thread-safe, deve ser usado só pela caixa da partida
+public class GradeEspacial<T> {
+  private final int tamanhoCelula;
+  private final int celulasPorLado;
+  // Listas criadas só quando a célula recebe o primeiro item
+  private final List<List<T>> celulas;
+
+  public GradeEspacial(int tamanhoTabuleiro, int tamanhoCelula) {
+    this.tamanhoCelula = tamanhoCelula;
+    this.celulasPorLado = Math.max(1, (tamanhoTabuleiro + tamanhoCelula - 1) / tamanhoCelula);
+    int totalCelulas = celulasPorLado * celulasPorLado;
+    this.celulas = new ArrayList<>(totalCelulas);
+    for (int i = 0; i < totalCelulas; i++) {
+      this.celulas.add(null);
+    }
+  }
+
+  // Coluna (ou linha) da célula que contém a coordenada
+  private int celula(int coordenada) {
+    if (coordenada < 0) {
+      return 0;
+    }
+    return Math.min(coordenada / tamanhoCelula, celulasPorLado - 1);
+  }
+
+  public void adicionar(T item, int x, int y) {
+    int indice = celula(y) * celulasPorLado + celula(x);
+    List<T> itens = celulas.get(indice);
+    if (itens == null) {
+      itens = new ArrayList<>(4);
+      celulas.set(indice, itens);
+    }
+    itens.add(item);
+  }
+
+  public void remover(T item, int x, int y) {
+    List<T> itens = celulas.get(celula(y) * celulasPorLado + celula(x));
+    if (itens != null) {
+      itens.remove(item);
+    }
+  }
+
+  // Atualiza a célula do item depois de uma mudança de posição, só mexe nas
+  // listas se a célula mudou
+  public void mover(T item, int xOrigem, int yOrigem, int xDestino, int yDestino) {
+    if (celula(xOrigem) == celula(xDestino) && celula(yOrigem) == celula(yDestino)) {
+      return;
+    }
+    remover(item, xOrigem, yOrigem);
+    adicionar(item, xDestino, yDestino);
+  }
+
+  // Adiciona em destino os itens das células que cobrem o quadrado de lado
+  // 2 * alcance + 1 centrado em (x, y). São candidatos: quem chama ainda deve
+  // verificar a distância de cada um
+  public void buscar(int x, int y, int alcance, List<T> destino) {
+    int celulaXInicio = celula(x - alcance);
+    int celulaXFim = celula(x + alcance);
+    int celulaYInicio = celula(y - alcance);
+    int celulaYFim = celula(y + alcance);
+    for (int celulaY = celulaYInicio; celulaY <= celulaYFim; celulaY++) {
+      for (int celulaX = celulaXInicio; celulaX <= celulaXFim; celulaX++) {
+        List<T> itens = celulas.get(celulaY * celulasPorLado + celulaX);
+        if (itens == null) {
+          continue;
+        }
+        for (int i = 0; i < itens.size(); i++) {
+          destino.add(itens.get(i));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package classes;
+
+import java.util.concurrent.atomic.*;
+
+// Histograma de valores long (latências em nanos, quantidade de destinatários)
+// com faixas logarítmicas: cada potência de 2 é dividida em 16 faixas, então o
+// valor de um percentil tem no máximo ~6% de erro e o histograma inteiro cabe
+// em um array fixo, de 0 até Long.MAX_VALUE
+// Registrar só incrementa contadores já existentes, sem criar objetos, e pode
+// ser chamado por várias threads ao mesmo tempo. A leitura dos percentis não
+// trava quem registra, então pode ver um registro pela metade (um valor contado
+// na faixa mas ainda não no total), o que não importa para um relatório
+public class Histograma {
+  private static final int BITS_SUBFAIXA = 4;
+  private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+  // Valores menores que SUBFAIXAS têm uma faixa cada, depois SUBFAIXAS faixas
+  // por potência de 2 até 2^63
+  private static final int NUMERO_FAIXAS = SUBFAIXAS + (64 - BITS_SUBFAIXA - 1) * SUBFAIXAS;
+
+  private final AtomicLongArray faixas = new AtomicLongArray(NUMERO_FAIXAS);
+  private final AtomicLong contagem = new AtomicLong();
+  private final AtomicLong soma = new AtomicLong();
+  private final AtomicLong maximo = new AtomicLong();
+
+  public void registrar(long valor) {
+    if (valor < 0) {
+      valor = 0;
+    }
+    faixas.incrementAndGet(faixa(valor));
+    contagem.incrementAndGet();
+    soma.addAndGet(valor);
+    long atual = maximo.get();
+    while (valor > atual && !maximo.compareAndSet(atual, valor)) {
+      atual = maximo.get();
+    }
+  }
+
+  private static int faixa(long valor) {
+    if (valor < SUBFAIXAS) {
+      return (int) valor;
+    }
+    int expoente = 63 - Long.numberOfLeadingZeros(valor);
+    int deslocamento = expoente - BITS_SUBFAIXA;
+    int subfaixa = (int) (valor >>> deslocamento) - SUBFAIXAS;
+    return SUBFAIXAS + deslocamento * SUBFAIXAS + subfaixa;
+  }
+
+  // Maior valor que cai na faixa
+  private static long limiteFaixa(int faixa) {
+    if (faixa < SUBFAIXAS) {
+      return faixa;
+    }
+    int deslocamento = (faixa - SUBFAIXAS) / SUBFAIXAS;
+    int subfaixa = (faixa - SUBFAIXAS) % SUBFAIXAS;
+    long inicio = (long) (SUBFAIXAS + subfaixa) << deslocamento;
+    return inicio + (1L << deslocamento) - 1;
+  }
+
+  // Valor abaixo do qual estão a fração (0 a 1) dos registros, 0 se vazio
+  public long percentil(double fracao) {
+    long total = contagem.get();
+    if (total == 0) {
+      return 0;
+    }
+    long alvo = (long) Math.ceil(fracao * total);
+    if (alvo < 1) {
+      alvo = 1;
+    }
+    long acumulado = 0;
+    for (int i = 0; i < NUMERO_FAIXAS; i++) {
+      acumulado += faixas.get(i);
+      if (acumulado >= alvo) {
+        return Math.min(limiteFaixa(i), maximo.get());
+      }
+    }
+    return maximo.get();
+  }
+
+  public long getContagem() {
+    return contagem.get();
+  }
+
+  public long getSoma() {
+    return soma.get();
+  }
+
+  public long getMaximo() {
+    return maximo.get();
+  }
+
+  public double getMedia() {
+    long total = contagem.get();
+    return total == 0 ? 0 : (double) soma.get() / total;
+  }
+}
@@ -1,16 +1,17 @@
 package classes;
 
-import java.net.Socket;
-
 public class Jogador extends Cliente {
   private Posicao posicao;
   private int numDispositivos;
   private int numMaxDispositivos;
   private int numMisseis;
   private boolean pronto;
+  // Número do jogador na tabela da partida (0, 1, 2...), definido pelo
+  // JogoPartida ao criar os jogadores
+  private int numero;
 
-  public Jogador(String nome, String token, Socket connectionSocket, int x, int y, int numMaxDispositivos) {
-    super(nome, token, connectionSocket);
+  public Jogador(String nome, String token, Conexao conexao, int x, int y, int numMaxDispositivos) {
+    super(nome, token, conexao);
     this.posicao = new Posicao(x, y);
     this.numDispositivos = 0;
     this.numMaxDispositivos = numMaxDispositivos;
@@ -34,6 +35,14 @@ public class Jogador extends Cliente {
     return this.numMisseis;
   }
 
+  public int getNumero() {
+    return this.numero;
+  }
+
+  void setNumero(int numero) {
+    this.numero = numero;
+  }
+
   public boolean getPronto() {
     return this.pronto;
   }
@@ -43,7 +52,7 @@ public class Jogador extends Cliente {
   }
 
   // Método para mover o jogador de acordo com um deslocamento em X e Y
-  boolean mover(int posicaoX, int posicaoY) {
+  boolean mover(int posicaoX, int posicaoY, int tamanhoTabuleiro) {
     // Interpreta posicaoX/posicaoY como coordenadas de destino (absolutas)
     // Verifica se o destino está dentro do deslocamento máximo a partir da posição
     // atual
@@ -58,14 +67,13 @@ public class Jogador extends Cliente {
     }
 
     // Verifica limites do tabuleiro
-    if (posicaoX < 0 || posicaoX >= Constants.TAMANHO_TABULEIRO || posicaoY < 0
-        || posicaoY >= Constants.TAMANHO_TABULEIRO) {
+    if (posicaoX < 0 || posicaoX >= tamanhoTabuleiro || posicaoY < 0 || posicaoY >= tamanhoTabuleiro) {
       return false;
     }
 
     // Atualiza posição para o destino
-    this.posicao.setX(posicaoX);
-    this.posicao.setY(posicaoY);
+    this.posicao.setX(posicaoX, tamanhoTabuleiro);
+    this.posicao.setY(posicaoY, tamanhoTabuleiro);
     return true;
   }
 
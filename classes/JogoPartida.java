@@ -1,67 +1,123 @@
 package classes;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 public class JogoPartida {
   private int id;
   private Partida partidaBase;
   private List<Jogador> jogadores;
   private List<DispositivoProximidade> dispositivos;
-  private List<Missil> misseis;
-  private String jogadorTurno;
+  // Mísseis dos últimos turnos, só os do turno atual (resolvidos no fim do
+  // turno) e do anterior (imprimirPartida) são usados, então os antigos são
+  // descartados e a memória não cresce com a duração da partida
+  private BufferCircular<Missil> misseis;
+  // Tabela dos jogadores pelo número (vivos e mortos) e jogadores vivos pelo
+  // nome, para as ações não precisarem percorrer a lista
+  private Jogador[] tabelaJogadores;
+  private Map<String, Jogador> jogadoresPorNome;
+  // Ordem dos turnos: lista circular dos números dos jogadores vivos. Um jogador
+  // removido continua apontando para quem vinha depois dele, assim o turno
+  // avança certo mesmo se quem estava jogando morreu ou saiu
+  private int[] proximoJogador;
+  private int[] anteriorJogador;
+  private boolean[] vivo;
+  // Número do jogador do turno atual, -1 antes do primeiro turno
+  private int turno;
   private int numTurno;
   // Essa lista serve para podermos enviar mensagens aos jogadores mortos que
   // ainda não sairam da partida e podermos resetar seus atributos no fim
   private List<Jogador> jogadoresMortos;
+  private final int tamanhoTabuleiro;
+  // Casas ocupadas pelos jogadores vivos, usada na detecção dos mísseis e
+  // dispositivos
+  private final Tabuleiro tabuleiro;
+  // Índices espaciais dos jogadores vivos e dos dispositivos, as buscas por
+  // alcance só olham as células próximas em vez de todos os itens da partida
+  private final GradeEspacial<Jogador> gradeJogadores;
+  private final GradeEspacial<DispositivoProximidade> gradeDispositivos;
+  // Dispositivos que precisam refazer a detecção no fim do turno: os novos e os
+  // que alcançam uma casa onde algum jogador chegou, saiu ou morreu
+  private final List<DispositivoProximidade> dispositivosPendentes = new ArrayList<>();
+  private final List<DispositivoProximidade> dispositivosAfetados = new ArrayList<>();
+  // Maior alcance entre os dispositivos da partida, usado para buscar na grade
+  // os que podem alcançar uma casa
+  private int alcanceMaxDispositivos = 0;
+  // Verificações dispositivo x jogador feitas na última atualizarDeteccoes
+  private int verificacoesDeteccao = 0;
+  // Lista reaproveitada nas buscas na grade
+  private final List<Jogador> candidatos = new ArrayList<>();
+  // Caixa de mensagens da partida: o estado da partida só é usado pelas tarefas
+  // executadas por ela (uma de cada vez), por isso a partida não tem trava
+  private Executor caixa;
+  // Canal dos jogadores da partida (vivos e mortos), quem sai da partida deixa
+  // de receber as mensagens dela
+  private final Canal canal;
 
   public JogoPartida(int id, List<Cliente> clientes, Partida partidaBase) {
+    this(id, clientes, partidaBase,
+        partidaBase != null ? partidaBase.getTamanhoTabuleiro() : Constants.TAMANHO_TABULEIRO);
+  }
+
+  public JogoPartida(int id, List<Cliente> clientes, Partida partidaBase, int tamanhoTabuleiro) {
     this.id = id;
     this.partidaBase = partidaBase;
+    this.tamanhoTabuleiro = tamanhoTabuleiro;
+    this.tabuleiro = new Tabuleiro(tamanhoTabuleiro);
+    this.gradeJogadores = new GradeEspacial<>(tamanhoTabuleiro, Constants.TAMANHO_CELULA_GRADE);
+    this.gradeDispositivos = new GradeEspacial<>(tamanhoTabuleiro, Constants.TAMANHO_CELULA_GRADE);
     this.dispositivos = new ArrayList<>();
     this.jogadores = new ArrayList<>();
     this.jogadoresMortos = new ArrayList<>();
-    this.misseis = new ArrayList<>();
-    this.jogadorTurno = null;
+    this.misseis = new BufferCircular<>(Constants.HISTORICO_MISSEIS);
+    this.tabelaJogadores = new Jogador[clientes.size()];
+    this.jogadoresPorNome = new HashMap<>();
+    this.proximoJogador = new int[clientes.size()];
+    this.anteriorJogador = new int[clientes.size()];
+    this.vivo = new boolean[clientes.size()];
+    this.turno = -1;
     this.numTurno = 0;
+    this.canal = new Canal("partida-" + id);
     Random random = new Random();
     // Vamos transformar os clientes em Jogadores
+    // As posições são sorteadas entre as casas sem nenhum jogador a menos de
+    // PROXIMIDADE_INICIAL_JOGADORES (ver Posicionador)
+    Posicionador posicionador = new Posicionador(this.tabuleiro, Constants.PROXIMIDADE_INICIAL_JOGADORES,
+        Constants.MODO_DISTANCIA_MOVIMENTO, random);
+    boolean posicionamentoCompleto = true;
 
     // Vamos percorrer cada cliente e instanciar um novo Jogador a partir dele
     Iterator<Cliente> iterator = clientes.iterator();
     while (iterator.hasNext()) {
       Cliente cl = iterator.next();
-      // Variavel para a posição do jogador que vai ser aleatória
-      int x1 = 0;
-      int y1 = 0;
-      // Variavel de controle do loop
-      boolean posicaoValida = false;
-
-      // Código meio ineficiente para garantir que os jogadores não sejam posicionados
-      // aleatóriamente um perto do outro de acordo com a constante
-      // PROXIMIDADE_INICIAL_JOGADORES
-      while (!posicaoValida) {
-        posicaoValida = true;
-        // Crie um x e y aleatórios
-        x1 = random.nextInt(16);
-        y1 = random.nextInt(16);
-        // Vamos verificar para todos os jogadores já instanciados no jogo para
-        // verificar se essas coordenadas geradas estão próximas de qualquer jogador
-        Iterator<Jogador> iterator2 = this.getJogadores().iterator();
-        while (iterator2.hasNext()) {
-          // Obtendo o jogador e suas coordenadas
-          Jogador jogadorJaInstanciado = iterator2.next();
-          // Verifica se a distância entre o jogador gerado e o já instanciado é menor que
-          // a permitida
-          if (jogadorJaInstanciado.getPosicao().distanciaPermitida(x1, y1, Constants.PROXIMIDADE_INICIAL_JOGADORES,
-              Constants.MODO_DISTANCIA_MOVIMENTO)) {
-            posicaoValida = false;
-            break;
-          }
-        }
+      int casa = posicionador.proximaCasa();
+      if (casa < 0) {
+        // Não cabem todos os jogadores com essa distância no tabuleiro (muitos
+        // jogadores para um tabuleiro pequeno), então os que sobraram ficam em
+        // qualquer casa em vez de a partida não começar
+        posicionamentoCompleto = false;
+        casa = random.nextInt(tamanhoTabuleiro * tamanhoTabuleiro);
       }
-      Jogador j = new Jogador(cl.getNome(), cl.getToken(), cl.getConnectionSocket(), x1, y1,
+      int x1 = casa % tamanhoTabuleiro;
+      int y1 = casa / tamanhoTabuleiro;
+      Jogador j = new Jogador(cl.getNome(), cl.getToken(), cl.getConexao(), x1, y1,
           Constants.NUMERO_MAX_DISPOSITIVOS_JOGADOR);
+      int numero = this.jogadores.size();
+      j.setNumero(numero);
       this.jogadores.add(j);
+      this.tabelaJogadores[numero] = j;
+      this.jogadoresPorNome.put(j.getNome(), j);
+      this.canal.inscrever(j);
+      this.vivo[numero] = true;
+      this.proximoJogador[numero] = (numero + 1) % tabelaJogadores.length;
+      this.anteriorJogador[numero] = (numero + tabelaJogadores.length - 1) % tabelaJogadores.length;
+      this.tabuleiro.adicionar(x1, y1);
+      this.gradeJogadores.adicionar(j, x1, y1);
+    }
+    if (!posicionamentoCompleto) {
+      System.out.println("Partida " + id + ": nao ha posicoes com distancia " + Constants.PROXIMIDADE_INICIAL_JOGADORES
+          + " para " + clientes.size() + " jogadores em um tabuleiro " + tamanhoTabuleiro + "x" + tamanhoTabuleiro
+          + ", alguns jogadores comecam proximos");
     }
   }
 
@@ -69,6 +125,22 @@ public class JogoPartida {
     return this.id;
   }
 
+  public int getTamanhoTabuleiro() {
+    return this.tamanhoTabuleiro;
+  }
+
+  public Executor getCaixa() {
+    return this.caixa;
+  }
+
+  public void setCaixa(Executor caixa) {
+    this.caixa = caixa;
+  }
+
+  public Canal getCanal() {
+    return this.canal;
+  }
+
   public List<Jogador> getJogadores() {
     return this.jogadores;
   }
@@ -84,22 +156,26 @@ public class JogoPartida {
     return todosJogadores;
   }
 
+  public Tabuleiro getTabuleiro() {
+    return this.tabuleiro;
+  }
+
   public List<DispositivoProximidade> getDispositivos() {
     return this.dispositivos;
   }
 
-  public List<Missil> getMisseis() {
+  public BufferCircular<Missil> getMisseis() {
     return this.misseis;
   }
 
   public String getJogadorTurno() {
-    return jogadorTurno;
+    return turno < 0 ? null : tabelaJogadores[turno].getNome();
   }
 
   public boolean setJogadorTurno(String jogadorTurno) {
     Jogador jogador = buscarJogadorPorNome(jogadorTurno);
     if (jogador != null) {
-      this.jogadorTurno = jogadorTurno;
+      this.turno = jogador.getNumero();
       this.numTurno++;
       return true;
     }
@@ -110,12 +186,20 @@ public class JogoPartida {
     return this.numTurno;
   }
 
+  // Retorna o jogador vivo com esse nome, ou null
   public Jogador buscarJogadorPorNome(String nome) {
-    Iterator<Jogador> iterator = this.jogadores.iterator();
-    while (iterator.hasNext()) {
-      Jogador j = iterator.next();
-      if (j.getNome().equals(nome)) {
-        return j;
+    return nome == null ? null : this.jogadoresPorNome.get(nome);
+  }
+
+  // Retorna o jogador com esse nome, vivo ou morto, ou null
+  public Jogador buscarJogadorPartida(String nome) {
+    Jogador jogador = buscarJogadorPorNome(nome);
+    if (jogador != null || nome == null) {
+      return jogador;
+    }
+    for (Jogador morto : this.jogadoresMortos) {
+      if (morto.getNome().equals(nome)) {
+        return morto;
       }
     }
     return null;
@@ -150,24 +234,39 @@ public class JogoPartida {
       return null;
 
     // Verifica se não há turno definido ainda
-    if (jogadorTurno == null) {
-      jogadorTurno = jogadores.get(0).getNome();
-      this.numTurno++;
-      return jogadorTurno;
+    if (turno < 0) {
+      turno = jogadores.get(0).getNumero();
+    } else {
+      // Avança para o próximo jogador da ordem dos turnos, pulando os que foram
+      // removidos depois de deixarem de estar na ordem (a volta para o início
+      // já está na lista circular)
+      turno = proximoJogador[turno];
+      while (!vivo[turno]) {
+        turno = proximoJogador[turno];
+      }
     }
+    this.numTurno++;
+    return tabelaJogadores[turno].getNome();
+  }
 
-    // Percorre a lista de jogadores para encontrar o jogador com o turno atual e
-    // avança para o próximo jogador da lista de jogadores dessa partida
-    for (int i = 0; i < jogadores.size(); i++) {
-      if (jogadores.get(i).getNome().equals(jogadorTurno)) {
-        // Garantir que volta ao início da lista se estiver no último jogador
-        int proximoIndice = (i + 1) % jogadores.size();
-        jogadorTurno = jogadores.get(proximoIndice).getNome();
-        this.numTurno++;
-        return jogadorTurno;
-      }
+  // Tira o jogador da lista de vivos, do índice por nome e da ordem dos turnos
+  // Retorna false se ele já tinha sido tirado
+  private boolean retirarJogador(Jogador jogador) {
+    if (jogador == null || !this.jogadores.remove(jogador)) {
+      return false;
     }
-    return null;
+    int numero = jogador.getNumero();
+    this.jogadoresPorNome.remove(jogador.getNome());
+    this.vivo[numero] = false;
+    // Liga o anterior ao próximo dele, o proximoJogador do removido não muda
+    int anterior = anteriorJogador[numero];
+    int proximo = proximoJogador[numero];
+    proximoJogador[anterior] = proximo;
+    anteriorJogador[proximo] = anterior;
+    tabuleiro.remover(jogador.getPosicao().getX(), jogador.getPosicao().getY());
+    gradeJogadores.remover(jogador, jogador.getPosicao().getX(), jogador.getPosicao().getY());
+    marcarDispositivosAfetados(jogador.getPosicao().getX(), jogador.getPosicao().getY());
+    return true;
   }
 
   // Retorna true se o movimento foi bem sucedido
@@ -181,7 +280,16 @@ public class JogoPartida {
       posicaoX = jogador.traduzirPosicaoX(posicaoX);
       posicaoY = jogador.traduzirPosicaoY(posicaoY);
     }
-    return jogador.mover(posicaoX, posicaoY);
+    int xOrigem = jogador.getPosicao().getX();
+    int yOrigem = jogador.getPosicao().getY();
+    if (!jogador.mover(posicaoX, posicaoY, tamanhoTabuleiro)) {
+      return false;
+    }
+    tabuleiro.mover(xOrigem, yOrigem, posicaoX, posicaoY);
+    gradeJogadores.mover(jogador, xOrigem, yOrigem, posicaoX, posicaoY);
+    marcarDispositivosAfetados(xOrigem, yOrigem);
+    marcarDispositivosAfetados(posicaoX, posicaoY);
+    return true;
   }
 
   // Retorna true se o ataque foi bem sucedido
@@ -203,16 +311,16 @@ public class JogoPartida {
 
     atacante.adicionarMissil();
 
-    // Adicionando missil ao histórico de mísseis da partida
+    // Adicionando missil ao histórico de mísseis recentes da partida
     Missil novoMissil = new Missil(posicaoX, posicaoY, Constants.ALCANCE_ATAQUE, atacante, numTurno);
-    this.misseis.add(novoMissil);
+    this.misseis.adicionar(novoMissil);
 
     return true;
   }
 
   // Método para quando um jogador morrer
   public void matarJogador(Jogador jogador) {
-    this.jogadores.remove(jogador);
+    retirarJogador(jogador);
     this.jogadoresMortos.add(jogador);
   }
 
@@ -244,13 +352,18 @@ public class JogoPartida {
     DispositivoProximidade dispositivo = new DispositivoProximidade(posicaoX, posicaoY,
         Constants.ALCANCE_DISPOSITIVO_PROXIMIDADE, jogador, jogador.getNumDispositivos());
     this.dispositivos.add(dispositivo);
+    this.gradeDispositivos.adicionar(dispositivo, posicaoX, posicaoY);
+    this.alcanceMaxDispositivos = Math.max(this.alcanceMaxDispositivos, dispositivo.getAlcance());
+    marcarPendente(dispositivo);
     return true;
   }
 
+  // Verifica só os dispositivos da célula da posição
   public boolean verificarDispositivoProximidadeExistente(Jogador jogador, int posicaoX, int posicaoY) {
-    Iterator<DispositivoProximidade> iterator = this.dispositivos.iterator();
-    while (iterator.hasNext()) {
-      DispositivoProximidade d = iterator.next();
+    List<DispositivoProximidade> dispositivosCelula = new ArrayList<>();
+    gradeDispositivos.buscar(posicaoX, posicaoY, 0, dispositivosCelula);
+    for (int i = 0; i < dispositivosCelula.size(); i++) {
+      DispositivoProximidade d = dispositivosCelula.get(i);
       if (d.getPosicao().getX() == posicaoX && d.getPosicao().getY() == posicaoY && d.getJogadorDono() == jogador) {
         return true;
       }
@@ -263,26 +376,94 @@ public class JogoPartida {
     if (jogadorDono != null) {
       jogadorDono.removerDispositivo();
     }
-    this.dispositivos.remove(dispositivo);
+    if (this.dispositivos.remove(dispositivo)) {
+      this.gradeDispositivos.remover(dispositivo, dispositivo.getPosicao().getX(), dispositivo.getPosicao().getY());
+      if (dispositivo.isPendente()) {
+        dispositivo.setPendente(false);
+        this.dispositivosPendentes.remove(dispositivo);
+      }
+    }
   }
 
-  // Método que itera sobre todos os jogadores e verifica se estão dentro do
-  // alcance do dispositivo e retorna como lista
+  private void marcarPendente(DispositivoProximidade dispositivo) {
+    if (!dispositivo.isPendente()) {
+      dispositivo.setPendente(true);
+      this.dispositivosPendentes.add(dispositivo);
+    }
+  }
+
+  // Marca para reavaliação os dispositivos que alcançam a casa (x, y), chamado
+  // quando um jogador chega ou sai dela
+  private void marcarDispositivosAfetados(int x, int y) {
+    if (this.dispositivos.isEmpty()) {
+      return;
+    }
+    dispositivosAfetados.clear();
+    gradeDispositivos.buscar(x, y, alcanceMaxDispositivos, dispositivosAfetados);
+    for (int i = 0; i < dispositivosAfetados.size(); i++) {
+      DispositivoProximidade dispositivo = dispositivosAfetados.get(i);
+      if (dispositivo.alcanca(x, y)) {
+        marcarPendente(dispositivo);
+      }
+    }
+  }
+
+  // Refaz a detecção só dos dispositivos pendentes, os outros continuam com o
+  // resultado guardado do turno anterior (nenhum jogador entrou, saiu ou se
+  // mexeu no alcance deles). Retorna quantas verificações dispositivo x
+  // jogador foram feitas
+  public int atualizarDeteccoes() {
+    this.verificacoesDeteccao = 0;
+    for (int i = 0; i < dispositivosPendentes.size(); i++) {
+      DispositivoProximidade dispositivo = dispositivosPendentes.get(i);
+      dispositivo.setPendente(false);
+      dispositivo.setJogadoresDetectados(detectarJogadores(dispositivo));
+    }
+    dispositivosPendentes.clear();
+    return this.verificacoesDeteccao;
+  }
+
+  public int getVerificacoesDeteccao() {
+    return this.verificacoesDeteccao;
+  }
+
+  // Método que retorna os jogadores dentro do alcance do detector
+  // Primeiro verifica no tabuleiro se alguma casa dentro do alcance está
+  // ocupada, no caso comum (ninguém por perto) não percorre os jogadores nem
+  // cria a lista. Se houver alguém, só os jogadores das células da grade em
+  // volta do detector são verificados
   public List<Jogador> detectarJogadores(IDetector detector) {
-    List<Jogador> jogadoresDetectados = new ArrayList<>();
-    Iterator<Jogador> iteratorJogadores = this.jogadores.iterator();
-    while (iteratorJogadores.hasNext()) {
-      Jogador jogador = iteratorJogadores.next();
+    Posicao posicao = detector.getPosicao();
+    if (!tabuleiro.algumNoAlcance(posicao.getX(), posicao.getY(), detector.getAlcance(),
+        detector.getModoAlcance())) {
+      return Collections.emptyList();
+    }
+    List<Jogador> jogadoresDetectados = null;
+    candidatos.clear();
+    gradeJogadores.buscar(posicao.getX(), posicao.getY(), detector.getAlcance(), candidatos);
+    this.verificacoesDeteccao += candidatos.size();
+    for (int i = 0; i < candidatos.size(); i++) {
+      Jogador jogador = candidatos.get(i);
       if (detector.detectarJogador(jogador)) {
+        if (jogadoresDetectados == null) {
+          jogadoresDetectados = new ArrayList<>();
+        }
         jogadoresDetectados.add(jogador);
       }
     }
-    return jogadoresDetectados;
+    return jogadoresDetectados == null ? Collections.<Jogador>emptyList() : jogadoresDetectados;
   }
 
-  // Método para remover um jogador da partida
+  // Método para remover um jogador da partida, vivo ou morto. Nos dois casos ele
+  // sai do canal e para de receber as mensagens da partida
   public void removerJogador(Jogador jogador) {
-    this.jogadores.remove(jogador);
+    if (jogador == null) {
+      return;
+    }
+    if (!retirarJogador(jogador)) {
+      this.jogadoresMortos.remove(jogador);
+    }
+    this.canal.desinscrever(jogador);
   }
 
   // Método que verifica se há apenas um jogador restante na partida, se sim, a
@@ -315,7 +496,7 @@ public class JogoPartida {
       return;
     }
 
-    int tamanho = Constants.TAMANHO_TABULEIRO;
+    int tamanho = tamanhoTabuleiro;
 
     // Inicializa o tabuleiro com '.'
     String[][] tab = new String[tamanho][tamanho];
@@ -371,8 +552,8 @@ public class JogoPartida {
 
     // Marca a posição de cada míssil lançado no turno atual com a primeira
     // letra do nome do dono em CAIXA ALTA (prioridade menor que jogador)
-    for (int i = 0; i < misseis.size(); i++) {
-      Missil m = misseis.get(i);
+    for (int i = 0; i < misseis.tamanho(); i++) {
+      Missil m = misseis.recente(i);
       if (m != null && m.getPosicao() != null && m.getNum() == this.numTurno - 1) {
         int mx = m.getPosicao().getX();
         int my = m.getPosicao().getY();
@@ -387,7 +568,7 @@ public class JogoPartida {
     }
 
     // Imprime cabeçalho com índices de coluna
-    System.out.println("Partida ID: " + this.id);
+    System.out.println("Partida ID: " + this.id + " (verificacoes de deteccao no turno: " + verificacoesDeteccao + ")");
     System.out.print("    ");
     for (int x = 0; x < tamanho; x++) {
       System.out.print(String.format("%2d ", x));
@@ -0,0 +1,71 @@
+package classes;
+
+// Linha tipo|codigo|mensagem|valor\n já codificada em bytes
+// É imutável, então a mesma Mensagem pode ser colocada na fila de saída de
+// vários clientes: nas notificações para todos a linha é montada e codificada
+// uma única vez, independente da quantidade de destinatários
+public class Mensagem {
+  private final String tipo;
+  private final byte[] bytes;
+
+  public Mensagem(String tipo, String codigo, String mensagem, String valor) {
+    this.tipo = tipo;
+    this.bytes = new byte[tamanhoLinha(tipo, codigo, mensagem, valor)];
+    codificarLinha(tipo, codigo, mensagem, valor, this.bytes, 0);
+  }
+
+  public String getTipo() {
+    return this.tipo;
+  }
+
+  // Mensagens de chat podem ser descartadas quando a fila do cliente enche
+  public boolean isChat() {
+    return Constants.TIPOCHATGLOBAL.equals(tipo) || Constants.TIPOCHATPARTIDA.equals(tipo)
+        || Constants.TIPOCHATJOGADOR.equals(tipo);
+  }
+
+  // Quantidade de bytes da linha, incluindo o \n
+  public int getTamanho() {
+    return this.bytes.length;
+  }
+
+  // Copia os bytes a partir de inicio para o destino, retorna quantos copiou
+  public int copiar(int inicio, byte[] destino, int pos, int quantidade) {
+    quantidade = Math.min(quantidade, bytes.length - inicio);
+    System.arraycopy(bytes, inicio, destino, pos, quantidade);
+    return quantidade;
+  }
+
+  // Quantidade de bytes da linha tipo|codigo|mensagem|valor\n
+  private static int tamanhoLinha(String tipo, String codigo, String mensagem, String valor) {
+    return String.valueOf(tipo).length() + String.valueOf(codigo).length() + String.valueOf(mensagem).length()
+        + String.valueOf(valor).length() + 4;
+  }
+
+  // Codifica a linha tipo|codigo|mensagem|valor\n no destino a partir de pos e
+  // retorna a posição seguinte ao \n
+  private static int codificarLinha(String tipo, String codigo, String mensagem, String valor, byte[] destino,
+      int pos) {
+    byte separador = (byte) Constants.SEPARADOR.charAt(0);
+    pos = codificar(tipo, destino, pos);
+    destino[pos++] = separador;
+    pos = codificar(codigo, destino, pos);
+    destino[pos++] = separador;
+    pos = codificar(mensagem, destino, pos);
+    destino[pos++] = separador;
+    pos = codificar(valor, destino, pos);
+    destino[pos++] = '\n';
+    return pos;
+  }
+
+  // Escreve apenas o byte menos significativo de cada caractere, o mesmo que o
+  // DataOutputStream.writeBytes fazia
+  private static int codificar(String texto, byte[] destino, int pos) {
+    texto = String.valueOf(texto);
+    int tamanho = texto.length();
+    for (int i = 0; i < tamanho; i++) {
+      destino[pos++] = (byte) texto.charAt(i);
+    }
+    return pos;
+  }
+}
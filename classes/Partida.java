@@ -7,12 +7,18 @@ public class Partida {
   private List<Cliente> clientes;
   private boolean andamento; // true para partida em andamento
   private int numMaxClientes;
+  private int tamanhoTabuleiro;
 
   public Partida(int id, int numMaxClientes) {
+    this(id, numMaxClientes, Constants.TAMANHO_TABULEIRO);
+  }
+
+  public Partida(int id, int numMaxClientes, int tamanhoTabuleiro) {
     this.id = id;
     this.clientes = new ArrayList<>();
     this.andamento = false;
     this.numMaxClientes = numMaxClientes;
+    this.tamanhoTabuleiro = tamanhoTabuleiro;
   }
 
   public boolean adicionarCliente(Cliente cliente) {
@@ -31,13 +37,26 @@ public class Partida {
     return this.id;
   }
 
+  public int getTamanhoTabuleiro() {
+    return this.tamanhoTabuleiro;
+  }
+
   public boolean getAndamento() {
     return this.andamento;
   }
 
   public String getInfo() {
     return "id:" + this.id + Constants.SEPARADORATRIBUTO + "andamento:" + this.andamento + Constants.SEPARADORATRIBUTO
-        + "numjogadores:" + this.clientes.size() + Constants.SEPARADORATRIBUTO + "maxjogadores:" + this.numMaxClientes;
+        + "numjogadores:" + this.clientes.size() + Constants.SEPARADORATRIBUTO + "maxjogadores:" + this.numMaxClientes
+        + Constants.SEPARADORATRIBUTO + "tamanho:" + this.tamanhoTabuleiro;
+  }
+
+  public int getNumClientes() {
+    return this.clientes.size();
+  }
+
+  public int getNumMaxClientes() {
+    return this.numMaxClientes;
   }
 
   public boolean partidaLotada() {
@@ -19,18 +19,18 @@ public class Posicao {
   }
 
   // Sets vão ser <default>
-  boolean setX(int x) {
+  boolean setX(int x, int tamanhoTabuleiro) {
     // Verifica se o valor está dentro dos limites do tabuleiro
-    if (x < 0 || x >= Constants.TAMANHO_TABULEIRO) {
+    if (x < 0 || x >= tamanhoTabuleiro) {
       return false;
     }
     this.x = x;
     return true;
   }
 
-  boolean setY(int y) {
+  boolean setY(int y, int tamanhoTabuleiro) {
     // Verifica se o valor está dentro dos limites do tabuleiro
-    if (y < 0 || y >= Constants.TAMANHO_TABULEIRO) {
+    if (y < 0 || y >= tamanhoTabuleiro) {
       return false;
     }
     this.y = y;
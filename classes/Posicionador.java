@@ -0,0 +1,65 @@
+package classes;
+
+import java.util.*;
+
+// Sorteia as posições iniciais dos jogadores respeitando a distância mínima
+// entre eles (PROXIMIDADE_INICIAL_JOGADORES)
+// Funciona como um embaralhamento de Fisher-Yates feito aos poucos: cada casa do
+// tabuleiro é sorteada no máximo uma vez, então uma casa que já estava perto de
+// algum jogador é descartada de vez (os jogadores só são adicionados, nunca
+// saem, durante o posicionamento). Assim o tempo é limitado pelo número de
+// casas mesmo quando não existe posição válida, e cada posição válida tem a
+// mesma chance de ser escolhida
+// Só as trocas do embaralhamento são guardadas (mapa esparso), para não criar
+// um array com todas as casas nos tabuleiros grandes
+// Antes do embaralhamento são feitos alguns sorteios simples, que resolvem o caso
+// comum (tabuleiro com bastante espaço) sem mexer no mapa
+public class Posicionador {
+  private static final int SORTEIOS_DIRETOS = 16;
+  private final Tabuleiro tabuleiro;
+  private final int distancia;
+  private final int modo;
+  private final Random random;
+  private final int totalCasas;
+  // Casas já sorteadas, as posições [0, sorteadas) do embaralhamento
+  private int sorteadas = 0;
+  // Posição do embaralhamento -> casa, só para as posições que foram trocadas
+  private final Map<Integer, Integer> trocas = new HashMap<>();
+
+  // O tabuleiro deve ter os jogadores já posicionados, a distância é verificada
+  // contra a ocupação dele
+  public Posicionador(Tabuleiro tabuleiro, int distancia, int modo, Random random) {
+    this.tabuleiro = tabuleiro;
+    this.distancia = distancia;
+    this.modo = modo;
+    this.random = random;
+    this.totalCasas = tabuleiro.getTamanho() * tabuleiro.getTamanho();
+  }
+
+  // Retorna a próxima casa (y * tamanho + x) sem nenhum jogador dentro da
+  // distância, ou -1 se não sobrou nenhuma. Quem chama deve adicionar o jogador
+  // no tabuleiro antes de pedir a próxima
+  public int proximaCasa() {
+    int tamanho = tabuleiro.getTamanho();
+    for (int i = 0; i < SORTEIOS_DIRETOS; i++) {
+      int casa = random.nextInt(totalCasas);
+      if (!tabuleiro.algumNoAlcance(casa % tamanho, casa / tamanho, distancia, modo)) {
+        return casa;
+      }
+    }
+    while (sorteadas < totalCasas) {
+      int sorteio = sorteadas + random.nextInt(totalCasas - sorteadas);
+      int casa = trocas.getOrDefault(sorteio, sorteio);
+      // A casa que estava na posição atual vai para a posição sorteada
+      Integer atual = trocas.remove(sorteadas);
+      if (sorteio != sorteadas) {
+        trocas.put(sorteio, atual != null ? atual : sorteadas);
+      }
+      sorteadas++;
+      if (!tabuleiro.algumNoAlcance(casa % tamanho, casa / tamanho, distancia, modo)) {
+        return casa;
+      }
+    }
+    return -1;
+  }
+}
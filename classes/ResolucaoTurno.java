@@ -0,0 +1,103 @@
+package classes;
+
+import java.util.*;
+
+// Resolução do fim de um turno: mísseis do turno, fim da partida, detecção dos
+// dispositivos e passagem do turno. Só muda o estado da partida e guarda o que
+// aconteceu como eventos, nada é enviado daqui (o GameManager envia os eventos
+// depois), então a resolução pode ser rodada e medida sem conexões
+// Deve rodar na caixa da partida, como as outras ações
+public class ResolucaoTurno {
+  private final JogoPartida jogoPartida;
+  private final List<EventoTurno> eventos = new ArrayList<>();
+  private boolean partidaFinalizada = false;
+  private int verificacoesDeteccao = 0;
+  private long nanosResolucao = 0;
+
+  public ResolucaoTurno(JogoPartida jogoPartida) {
+    this.jogoPartida = jogoPartida;
+  }
+
+  // Resolve o turno e retorna os eventos na ordem em que devem ser enviados
+  // Se a partida terminou não há detecção nem próximo turno
+  public List<EventoTurno> resolver() {
+    long inicio = System.nanoTime();
+    resolverAtaques();
+    if (!resolverFimPartida()) {
+      resolverDeteccoes();
+      eventos.add(EventoTurno.turno(jogoPartida.proximoTurno()));
+    }
+    nanosResolucao = System.nanoTime() - inicio;
+    return eventos;
+  }
+
+  // Mísseis lançados neste turno matam os jogadores no alcance
+  private void resolverAtaques() {
+    BufferCircular<Missil> misseis = jogoPartida.getMisseis();
+    int numTurnoAtual = jogoPartida.getNumTurno();
+    // Loop dos misseis recentes, do mais novo para o mais antigo
+    for (int i = 0; i < misseis.tamanho(); i++) {
+      Missil missil = misseis.recente(i);
+      int numTurnoMissil = missil.getNum();
+
+      if (numTurnoMissil < numTurnoAtual) {
+        break;
+      }
+
+      if (numTurnoMissil != numTurnoAtual) {
+        continue;
+      }
+
+      // Pega a lista de todos jogadores próximos do missil
+      List<Jogador> jogadoresAcertados = jogoPartida.detectarJogadores(missil);
+      if (jogadoresAcertados.isEmpty()) {
+        continue;
+      }
+      eventos.add(EventoTurno.acerto(missil.getJogadorDono(), jogadoresAcertados));
+      for (Jogador jogadorAcertado : jogadoresAcertados) {
+        jogoPartida.matarJogador(jogadorAcertado);
+        eventos.add(EventoTurno.morte(jogadorAcertado, missil.getJogadorDono()));
+      }
+    }
+  }
+
+  private boolean resolverFimPartida() {
+    Jogador vencedor = jogoPartida.verificarFimPartida();
+    if (vencedor != null) {
+      eventos.add(EventoTurno.vitoria(vencedor));
+      eventos.add(EventoTurno.fimPartida(vencedor));
+      partidaFinalizada = true;
+    } else if (jogoPartida.verificarNenhumJogadorRestante()) {
+      eventos.add(EventoTurno.fimPartida(null));
+      partidaFinalizada = true;
+    }
+    return partidaFinalizada;
+  }
+
+  // Só os dispositivos afetados por movimentos desde o último turno refazem a
+  // detecção, mas todos que detectam alguém geram o evento
+  private void resolverDeteccoes() {
+    verificacoesDeteccao = jogoPartida.atualizarDeteccoes();
+    for (DispositivoProximidade dispositivo : jogoPartida.getDispositivos()) {
+      if (!dispositivo.getJogadoresDetectados().isEmpty()) {
+        eventos.add(EventoTurno.deteccao(dispositivo));
+      }
+    }
+  }
+
+  public List<EventoTurno> getEventos() {
+    return this.eventos;
+  }
+
+  public boolean isPartidaFinalizada() {
+    return this.partidaFinalizada;
+  }
+
+  public int getVerificacoesDeteccao() {
+    return this.verificacoesDeteccao;
+  }
+
+  public long getNanosResolucao() {
+    return this.nanosResolucao;
+  }
+}
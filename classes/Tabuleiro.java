@@ -0,0 +1,183 @@
+package classes;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Ocupação do tabuleiro de uma partida em bits (bitboard): a casa (x, y) é o
+// bit y * tamanho + x e o bit fica ligado se há algum jogador vivo nela, um
+// tabuleiro 16x16 cabe em 4 longs e um 512x512 em 4096
+// Para saber se um míssil ou dispositivo alcança alguém basta um AND da
+// ocupação com a máscara da área de alcance, sem percorrer os jogadores e sem
+// criar objetos
+public class Tabuleiro {
+  // Tabuleiros com até essa quantidade de longs usam máscaras calculadas antes
+  // para cada casa (32x32 ou menor), nos maiores as máscaras ocupariam muita
+  // memória e a área de alcance é verificada linha por linha
+  private static final int MAX_PALAVRAS_MASCARAS = 16;
+  // Máscaras de alcance por tamanho do tabuleiro, modo e alcance, calculadas na
+  // primeira vez que são usadas e compartilhadas por todas as partidas
+  // Cada uma tem palavras longs por casa: a máscara da casa c começa em
+  // c * palavras
+  private static final ConcurrentMap<Long, long[]> MASCARAS = new ConcurrentHashMap<>();
+
+  private final int tamanho;
+  private final int palavras;
+  private final long[] ocupacao;
+  // Jogadores a mais nas casas com mais de um jogador (dois jogadores podem
+  // estar na mesma casa e o bit só é limpo quando o último sai). Só guarda as
+  // casas repetidas para não gastar memória nos tabuleiros grandes
+  private final Map<Integer, Integer> jogadoresExtras = new HashMap<>();
+  // Máscaras já usadas por este tabuleiro, por modo e alcance, para não buscar
+  // no mapa a cada detecção (o tabuleiro só é usado pela caixa da partida)
+  private long[][][] mascarasUsadas = new long[2][][];
+
+  public Tabuleiro(int tamanho) {
+    this.tamanho = tamanho;
+    this.palavras = (tamanho * tamanho + 63) >>> 6;
+    this.ocupacao = new long[palavras];
+  }
+
+  public int getTamanho() {
+    return this.tamanho;
+  }
+
+  public boolean dentro(int x, int y) {
+    return x >= 0 && x < tamanho && y >= 0 && y < tamanho;
+  }
+
+  public boolean ocupada(int x, int y) {
+    if (!dentro(x, y)) {
+      return false;
+    }
+    int casa = y * tamanho + x;
+    return (ocupacao[casa >>> 6] & (1L << casa)) != 0;
+  }
+
+  // Os métodos que alteram a ocupação são <default>, só o JogoPartida altera
+  void adicionar(int x, int y) {
+    if (!dentro(x, y)) {
+      return;
+    }
+    int casa = y * tamanho + x;
+    if ((ocupacao[casa >>> 6] & (1L << casa)) != 0) {
+      jogadoresExtras.merge(casa, 1, Integer::sum);
+      return;
+    }
+    ocupacao[casa >>> 6] |= 1L << casa;
+  }
+
+  void remover(int x, int y) {
+    if (!dentro(x, y)) {
+      return;
+    }
+    int casa = y * tamanho + x;
+    Integer extras = jogadoresExtras.get(casa);
+    if (extras != null) {
+      if (extras == 1) {
+        jogadoresExtras.remove(casa);
+      } else {
+        jogadoresExtras.put(casa, extras - 1);
+      }
+      return;
+    }
+    ocupacao[casa >>> 6] &= ~(1L << casa);
+  }
+
+  void mover(int xOrigem, int yOrigem, int xDestino, int yDestino) {
+    remover(xOrigem, yOrigem);
+    adicionar(xDestino, yDestino);
+  }
+
+  // Retorna true se alguma casa ocupada está dentro do alcance a partir de
+  // (x, y), com o mesmo cálculo do Posicao.distanciaPermitida (modo 0 quadrado,
+  // outro valor losango). O centro pode estar fora do tabuleiro
+  public boolean algumNoAlcance(int x, int y, int alcance, int modo) {
+    if (alcance < 0) {
+      return false;
+    }
+    if (palavras <= MAX_PALAVRAS_MASCARAS && dentro(x, y)) {
+      long[] mascaras = mascarasUsadas(modo == 0 ? 0 : 1, alcance);
+      int inicio = (y * tamanho + x) * palavras;
+      for (int p = 0; p < palavras; p++) {
+        if ((ocupacao[p] & mascaras[inicio + p]) != 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+    int yInicio = Math.max(0, y - alcance);
+    int yFim = Math.min(tamanho - 1, y + alcance);
+    for (int linha = yInicio; linha <= yFim; linha++) {
+      int meiaLargura = meiaLargura(alcance, modo, linha - y);
+      int xInicio = Math.max(0, x - meiaLargura);
+      int xFim = Math.min(tamanho - 1, x + meiaLargura);
+      if (xInicio <= xFim && intervaloOcupado(linha * tamanho + xInicio, linha * tamanho + xFim)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Verifica as casas [casaInicio, casaFim] com um AND por long
+  private boolean intervaloOcupado(int casaInicio, int casaFim) {
+    int palavraInicio = casaInicio >>> 6;
+    int palavraFim = casaFim >>> 6;
+    for (int p = palavraInicio; p <= palavraFim; p++) {
+      long mascara = -1L;
+      if (p == palavraInicio) {
+        mascara &= -1L << casaInicio;
+      }
+      if (p == palavraFim) {
+        mascara &= -1L >>> (63 - (casaFim & 63));
+      }
+      if ((ocupacao[p] & mascara) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long[] mascarasUsadas(int modo, int alcance) {
+    long[][] porAlcance = mascarasUsadas[modo];
+    if (porAlcance == null || alcance >= porAlcance.length) {
+      porAlcance = porAlcance == null ? new long[alcance + 1][] : Arrays.copyOf(porAlcance, alcance + 1);
+      mascarasUsadas[modo] = porAlcance;
+    }
+    long[] mascaras = porAlcance[alcance];
+    if (mascaras == null) {
+      long chave = ((long) tamanho << 32) | ((long) alcance << 1) | modo;
+      mascaras = MASCARAS.computeIfAbsent(chave, k -> calcularMascaras(tamanho, modo, alcance));
+      porAlcance[alcance] = mascaras;
+    }
+    return mascaras;
+  }
+
+  private static long[] calcularMascaras(int tamanho, int modo, int alcance) {
+    int palavras = (tamanho * tamanho + 63) >>> 6;
+    long[] mascaras = new long[tamanho * tamanho * palavras];
+    for (int y = 0; y < tamanho; y++) {
+      for (int x = 0; x < tamanho; x++) {
+        int inicio = (y * tamanho + x) * palavras;
+        for (int linha = Math.max(0, y - alcance); linha <= Math.min(tamanho - 1, y + alcance); linha++) {
+          int meiaLargura = meiaLargura(alcance, modo, linha - y);
+          int colunaFim = Math.min(tamanho - 1, x + meiaLargura);
+          for (int coluna = Math.max(0, x - meiaLargura); coluna <= colunaFim; coluna++) {
+            int casa = linha * tamanho + coluna;
+            mascaras[inicio + (casa >>> 6)] |= 1L << casa;
+          }
+        }
+      }
+    }
+    return mascaras;
+  }
+
+  // Meia largura da linha dy da área de alcance
+  private static int meiaLargura(int alcance, int modo, int dy) {
+    // Quadrado: todas as linhas têm a mesma largura
+    if (modo == 0) {
+      return alcance;
+    }
+    // Losango: a largura diminui conforme se afasta da linha do centro
+    return alcance - Math.abs(dy);
+  }
+}
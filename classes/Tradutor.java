@@ -1,5 +1,6 @@
 package classes;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -8,7 +9,7 @@ import java.util.Map;
 // LISTARPARTIDAS
 // LISTARJOGADORES
 // ENTRARPARTIDA <nome> <token> <idPartida>
-// DESAFIAR <nomeDesafiante> <token> <nomeDesafiado>
+// DESAFIAR <nomeDesafiante> <token> <nomeDesafiado> [<tamanhoTabuleiro>]
 // ACEITARDESAFIO <nomeDesafiado> <token> <nomeDesafiante>
 // RECUSARDESAFIO <nomeDesafiado> <token> <nomeDesafiante>
 // CHATGLOBAL <nome> <token> <mensagem>
@@ -22,6 +23,10 @@ import java.util.Map;
 // SAIRPARTIDA <nome> <token>
 // SAIR <nome> <token>
 // KEEPALIVE <nome> <token>
+// DELTALOBBY <nome> <token>
+// RETOMAR <nome> <token>
+// Depois do CADASTRAR ou do RETOMAR a conexão fica ligada ao cliente e os
+// comandos acima podem ser enviados sem <nome> <token>, ex: MOVER 3 4
 
 // HashMap apenas para permitir ao cliente enviar comandos com textos diferentes
 public class Tradutor {
@@ -73,6 +78,9 @@ public class Tradutor {
     tradutor.put(Constants.TIPOSAIRPARTIDA, "SAIRPARTIDA");
     tradutor.put(Constants.TIPOSAIR, "SAIR");
     tradutor.put(Constants.TIPOKEEPALIVE, "KEEPALIVE");
+    tradutor.put(Constants.TIPODELTALOBBY, "DELTALOBBY");
+    tradutor.put("RESUME", "RETOMAR");
+    tradutor.put(Constants.TIPORETOMAR, "RETOMAR");
   }
 
   public boolean containsKey(String key) {
@@ -82,4 +90,10 @@ public class Tradutor {
   public String get(String key) {
     return tradutor.get(key);
   }
+
+  // Todos os nomes aceitos e o comando de cada um, usado pelo servidor para
+  // montar a árvore de busca dos comandos
+  public Map<String, String> getTraducoes() {
+    return Collections.unmodifiableMap(tradutor);
+  }
 }
@@ -13,7 +13,8 @@ import java.util.concurrent.atomic.*;
  * - sends: CADASTRAR <name>
  * - waits for server response containing token:... and stores the token
  * - reads commands from the provided file (skipping the first two lines)
- * - for each command, sends: <command> <name> <token> <rest-of-command>
+ * - for each command, sends: <command> <rest-of-command> (the connection is
+ *   bound to the registered client, so name and token are not needed)
  * - sleeps the configured interval between commands
  *
  * Usage: java -cp classes client.AutoClient <name> <tempoMs> <commandsFile>
@@ -122,10 +123,7 @@ public class AutoClient {
     for (String cmd : commands) {
       if (!running.get())
         break;
-      String[] parts = cmd.split("\\s+", 2);
-      String first = parts.length > 0 ? parts[0] : cmd;
-      String rest = parts.length > 1 ? parts[1] : "";
-      String toSend = first + " " + name + " " + token + (rest.isEmpty() ? "" : " " + rest);
+      String toSend = cmd.trim();
       synchronized (out) {
         out.writeBytes(toSend + "\n");
         out.flush();
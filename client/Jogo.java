@@ -58,9 +58,17 @@ public class Jogo extends JFrame {
   private boolean jogadorMorto = false;
 
   // --- Configurações / estado do tabuleiro ---
-  private static final int BOARD_SIZE = 16;
-  private JButton[][] boardButtons = new JButton[BOARD_SIZE][BOARD_SIZE];
-  private boolean[][] atacado = new boolean[BOARD_SIZE][BOARD_SIZE];
+  // Tamanho do tabuleiro da partida atual, informado pelo servidor no
+  // RESERVADOPARTIDA (cada partida pode ter o seu). A tela mostra uma janela de
+  // VIEW_SIZE x VIEW_SIZE casas centrada no jogador, assim tabuleiros grandes
+  // não criam um botão por casa
+  private static final int VIEW_SIZE = 16;
+  private int boardSize = 16;
+  // Casa do tabuleiro que aparece no canto superior esquerdo da janela
+  private int viewX = 0;
+  private int viewY = 0;
+  private JButton[][] boardButtons = new JButton[VIEW_SIZE][VIEW_SIZE];
+  private boolean[][] atacado = new boolean[boardSize][boardSize];
   // Painel do tabuleiro (guardado para atualizações em lote)
   private JPanel boardPanelRef;
   // Modo buttons e controle de saída expostos como campos para garantir que
@@ -131,12 +139,12 @@ public class Jogo extends JFrame {
   }
 
   // Marcações de sonar (permanentes) e contadores de uso do jogador
-  private boolean[][] sonarMarked = new boolean[BOARD_SIZE][BOARD_SIZE];
+  private boolean[][] sonarMarked = new boolean[boardSize][boardSize];
   private int sonaresPlaced = 0; // quantos sonares este cliente já colocou (confirmados)
   private int pendingSonares = 0; // requisições de sonar enviadas aguardando confirmação
   private static final int MAX_SONARES = 4;
   // Grid que guarda o id do sonar (0 = nenhum). IDs válidos: 1..MAX_SONARES
-  private int[][] sonarIdGrid = new int[BOARD_SIZE][BOARD_SIZE];
+  private int[][] sonarIdGrid = new int[boardSize][boardSize];
   // Coordenadas dos sonares deste jogador por id (1..MAX_SONARES)
   private java.awt.Point[] mySonarCoords = new java.awt.Point[MAX_SONARES + 1];
   // Flags indicando se um sonar (por id) detectou alguém (para colorir)
@@ -146,7 +154,7 @@ public class Jogo extends JFrame {
   // (quando são resetadas). O servidor envia DETECTADO a cada turno para
   // sonares que detectaram, então limpamos aqui no início de cada TURNO
   // e deixamos o servidor re-sinalizar os que devem permanecer detectados.
-  private boolean[][] sonarDetected = new boolean[BOARD_SIZE][BOARD_SIZE];
+  private boolean[][] sonarDetected = new boolean[boardSize][boardSize];
 
   // Duração (ms) da marcação visual de ataque (X). Fica visível por 3 segundos.
   private static final int ATTACK_MARK_MS = 3000;
@@ -173,6 +181,12 @@ public class Jogo extends JFrame {
   private ScheduledExecutorService keepaliveScheduler = null;
   private static final long KEEPALIVE_INTERVAL_SECONDS = 15;
 
+  // Lobby incremental (DELTALOBBY): versão do último evento aplicado, -1
+  // enquanto não recebemos o estado completo do servidor
+  private long versaoLobby = -1;
+  // Partidas públicas por id, os eventos PARTIDAATUALIZADA trocam um item
+  private final transient java.util.Map<String, String> partidasLobby = new java.util.LinkedHashMap<>();
+
   public Jogo() {
     super("Batalha Subaquática");
     setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -194,7 +208,7 @@ public class Jogo extends JFrame {
   }
 
   // Inicia o agendador de keepalive (se já não iniciado). Envia
-  // periodicamente "KEEPALIVE <jogadorAtual> <token>" ao servidor.
+  // periodicamente "KEEPALIVE" ao servidor.
   private void startKeepalive() {
     if (keepaliveScheduler != null && !keepaliveScheduler.isShutdown())
       return; // já rodando
@@ -206,7 +220,7 @@ public class Jogo extends JFrame {
     keepaliveScheduler.scheduleAtFixedRate(() -> {
       try {
         if (connection != null && connection.isConnected() && jogadorAtual != null && token != null) {
-          connection.sendLine("KEEPALIVE " + jogadorAtual + " " + token);
+          connection.sendLine("KEEPALIVE");
         }
       } catch (Exception ignore) {
       }
@@ -428,15 +442,14 @@ public class Jogo extends JFrame {
     // será mostrada dentro do painel central acima do conteúdo de Home.
     northContainer.add(topo, BorderLayout.CENTER);
 
-    // Botão de sair no canto superior direito da Home. Envia "SAIR <jogador>
-    // <token>"
+    // Botão de sair no canto superior direito da Home. Envia "SAIR"
     // ao servidor (se conectado), fecha a conexão, limpa o estado do cliente e
     // retorna para a tela de cadastro.
     JButton logoutBtn = new JButton("Sair");
     logoutBtn.addActionListener(e -> {
       // Envia o comando SAIR ao servidor, se possível, e fecha a conexão.
       if (connection != null && connection.isConnected()) {
-        connection.sendLine("SAIR " + (jogadorAtual == null ? "" : jogadorAtual) + " " + (token == null ? "" : token));
+        connection.sendLine("SAIR");
         try {
           connection.close();
         } catch (IOException ex) {
@@ -679,7 +692,7 @@ public class Jogo extends JFrame {
       }
 
       // Envia o comando DESAFIAR para o servidor (formato atual do projeto)
-      connection.sendLine("DESAFIAR " + jogadorAtual + " " + token + " " + nome);
+      connection.sendLine("DESAFIAR " + nome);
     });
 
     linha.add(label, BorderLayout.CENTER);
@@ -764,20 +777,20 @@ public class Jogo extends JFrame {
 
     tela.add(northPanel, BorderLayout.NORTH);
 
-    // Tabuleiro (16x16)
+    // Tabuleiro (janela de 16x16 casas)
     // Use zero gaps so cells are "juntinhos" (tight together)
-    JPanel boardPanel = new JPanel(new GridLayout(BOARD_SIZE, BOARD_SIZE, 1, 1));
+    JPanel boardPanel = new JPanel(new GridLayout(VIEW_SIZE, VIEW_SIZE, 1, 1));
     // guarda referência para otimizar atualizações em lote
     boardPanelRef = boardPanel;
     boardPanel.setBorder(new EmptyBorder(8, 8, 8, 8));
 
     // Set the preferred size of the whole board to a fixed rectangle so the
-    // GridLayout will divide that rectangle into BOARD_SIZE x BOARD_SIZE cells
+    // GridLayout will divide that rectangle into VIEW_SIZE x VIEW_SIZE cells
     // responsively (cells will not be forced to a fixed pixel size).
     boardPanel.setPreferredSize(new Dimension(boardDisplayWidth, boardDisplayHeight));
 
-    for (int y = 0; y < BOARD_SIZE; y++) {
-      for (int x = 0; x < BOARD_SIZE; x++) {
+    for (int y = 0; y < VIEW_SIZE; y++) {
+      for (int x = 0; x < VIEW_SIZE; x++) {
         final int cx = x, cy = y;
         JButton b = new JButton();
         b.setMargin(new Insets(0, 0, 0, 0));
@@ -788,7 +801,13 @@ public class Jogo extends JFrame {
         // Garantir que o background seja pintado corretamente ao mudar cores
         b.setOpaque(true);
         b.setBackground(Color.WHITE);
-        b.addActionListener(e -> onCellClick(cx, cy));
+        // O botão é uma posição da janela, a casa do tabuleiro depende de onde a
+        // janela está no momento do clique
+        b.addActionListener(e -> {
+          int bx = viewX + cx, by = viewY + cy;
+          if (bx < boardSize && by < boardSize)
+            onCellClick(bx, by);
+        });
         boardButtons[y][x] = b;
         boardPanel.add(b);
       }
@@ -850,12 +869,11 @@ public class Jogo extends JFrame {
     JPanel status = new JPanel(new BorderLayout());
     status.setBorder(new EmptyBorder(4, 8, 4, 8));
 
-    // Botão para passar o turno (envia apenas a linha PASSAR <jogadorAtual>
-    // <token>)
+    // Botão para passar o turno (envia apenas a linha PASSAR)
     JButton passarTurno = new JButton("Passar turno");
     passarTurno.addActionListener(e -> {
       if (connection != null && connection.isConnected()) {
-        connection.sendLine("PASSAR " + jogadorAtual + " " + token);
+        connection.sendLine("PASSAR");
       } else {
         JOptionPane.showMessageDialog(this, "Sem conexão com o servidor.", "Passar turno", JOptionPane.WARNING_MESSAGE);
       }
@@ -865,7 +883,7 @@ public class Jogo extends JFrame {
     sairPartidaBtn = new JButton("Sair da partida");
     sairPartidaBtn.addActionListener(e -> {
       if (connection != null && connection.isConnected()) {
-        connection.sendLine("SAIRPARTIDA " + jogadorAtual + " " + token);
+        connection.sendLine("SAIRPARTIDA");
       }
       // Volta para a Home independentemente da conexão (UI)
       showHome();
@@ -884,9 +902,15 @@ public class Jogo extends JFrame {
   }
 
   private void iniciarPartida() {
-    // reinicia estado
-    for (int y = 0; y < BOARD_SIZE; y++) {
-      for (int x = 0; x < BOARD_SIZE; x++) {
+    // reinicia estado, recriando as marcações se o tamanho do tabuleiro mudou
+    if (atacado.length != boardSize) {
+      atacado = new boolean[boardSize][boardSize];
+      sonarMarked = new boolean[boardSize][boardSize];
+      sonarDetected = new boolean[boardSize][boardSize];
+      sonarIdGrid = new int[boardSize][boardSize];
+    }
+    for (int y = 0; y < boardSize; y++) {
+      for (int x = 0; x < boardSize; x++) {
         atacado[y][x] = false;
         sonarMarked[y][x] = false;
         sonarDetected[y][x] = false;
@@ -894,14 +918,14 @@ public class Jogo extends JFrame {
     }
     // jogador volta a estar vivo no início da partida
     jogadorMorto = false;
-    playerX = clamp(startX, 0, BOARD_SIZE - 1);
-    playerY = clamp(startY, 0, BOARD_SIZE - 1);
+    playerX = clamp(startX, 0, boardSize - 1);
+    playerY = clamp(startY, 0, boardSize - 1);
     playerTurn = true;
     sonaresPlaced = 0;
     pendingSonares = 0;
     // limpa ids e detections
-    for (int y = 0; y < BOARD_SIZE; y++) {
-      for (int x = 0; x < BOARD_SIZE; x++) {
+    for (int y = 0; y < boardSize; y++) {
+      for (int x = 0; x < boardSize; x++) {
         sonarIdGrid[y][x] = 0;
       }
     }
@@ -938,7 +962,7 @@ public class Jogo extends JFrame {
         // Não atualizar posição local aqui — enviamos ao servidor e esperamos a
         // confirmação/atualização via mensagem MOVER do servidor.
         if (connection != null && connection.isConnected()) {
-          connection.sendLine("MOVER " + jogadorAtual + " " + token + " " + x + " " + y);
+          connection.sendLine("MOVER " + x + " " + y);
           // Immediately reset sonar visuals to 'S' (clear detections) and
           // trust the server to re-send DETECTADO for any sonars that detect.
           clearAllSonarDetections();
@@ -951,7 +975,7 @@ public class Jogo extends JFrame {
         // Não aplicar efeito local imediatamente — envie ao servidor e aguarde
         // confirmação (mensagem "ATACAR") para desenhar o X temporário.
         if (connection != null && connection.isConnected()) {
-          connection.sendLine("ATACAR " + jogadorAtual + " " + token + " " + x + " " + y);
+          connection.sendLine("ATACAR " + x + " " + y);
           // Clear detections so sonars show as 'S' until server says otherwise
           clearAllSonarDetections();
           fimDoTurnoDoJogador();
@@ -967,7 +991,7 @@ public class Jogo extends JFrame {
         if (connection != null && connection.isConnected()) {
           // marcaremos ao receber a confirmação do servidor (mensagem "SONAR").
           pendingSonares++;
-          connection.sendLine("SONAR " + jogadorAtual + " " + token + " " + x + " " + y);
+          connection.sendLine("SONAR " + x + " " + y);
           // Clear detections immediately so sonars revert to 'S' until server
           // sends DETECTADO messages again.
           clearAllSonarDetections();
@@ -1030,16 +1054,32 @@ public class Jogo extends JFrame {
     atualizarTabuleiro();
   }
 
+  // Posiciona a janela do tabuleiro centrada no jogador, sem sair do tabuleiro
+  private void centralizarVisao() {
+    int maxOrigem = Math.max(0, boardSize - VIEW_SIZE);
+    viewX = clamp(playerX - VIEW_SIZE / 2, 0, maxOrigem);
+    viewY = clamp(playerY - VIEW_SIZE / 2, 0, maxOrigem);
+  }
+
   private void atualizarTabuleiro() {
     // Quando for o turno do jogador mostramos os destaques de alcance.
     boolean showReach = (playerTurn != null && playerTurn);
+    centralizarVisao();
 
-    for (int y = 0; y < BOARD_SIZE; y++) {
-      for (int x = 0; x < BOARD_SIZE; x++) {
-        JButton b = boardButtons[y][x];
+    for (int vy = 0; vy < VIEW_SIZE; vy++) {
+      for (int vx = 0; vx < VIEW_SIZE; vx++) {
+        JButton b = boardButtons[vy][vx];
         if (b == null)
           continue;
         b.setText("");
+        int x = viewX + vx;
+        int y = viewY + vy;
+
+        // Tabuleiro menor que a janela: casas que não existem ficam cinzas
+        if (x >= boardSize || y >= boardSize) {
+          b.setBackground(Color.LIGHT_GRAY);
+          continue;
+        }
 
         // Prioridade alta: jogador, ataques e sonares já marcados
         if (x == playerX && y == playerY) {
@@ -1147,8 +1187,8 @@ public class Jogo extends JFrame {
   // chamada imediatamente quando o jogador realiza uma ação local (mover/
   // atacar/sonar) para confiar no servidor como autoridade.
   private void clearAllSonarDetections() {
-    for (int yy = 0; yy < BOARD_SIZE; yy++) {
-      for (int xx = 0; xx < BOARD_SIZE; xx++) {
+    for (int yy = 0; yy < boardSize; yy++) {
+      for (int xx = 0; xx < boardSize; xx++) {
         sonarDetected[yy][xx] = false;
       }
     }
@@ -1195,6 +1235,61 @@ public class Jogo extends JFrame {
     atualizarListaJogadores();
   }
 
+  // Recebe o campo 'jogadores:{nome:a;nome:b}' da lista completa e atualiza a
+  // lista de jogadores (sem o próprio jogador)
+  private void carregarJogadoresLobby(String jogadoresLista) {
+    String jogadores[] = separarLista(jogadoresLista);
+    String csv = "";
+    for (String j : jogadores) {
+      if (csv.length() > 0) {
+        csv += ",";
+      }
+      String nome = separarValores(j, "nome");
+      if (!jogadorAtual.equals(nome)) {
+        csv += nome;
+      }
+    }
+    atualizarListaJogadoresDoServidor(csv);
+  }
+
+  // Recebe o campo 'partidas:{...}' da lista completa, guarda as partidas por id
+  // para os eventos PARTIDAATUALIZADA e atualiza o painel
+  private void carregarPartidasLobby(String partidasCampo) {
+    partidasLobby.clear();
+    for (String item : separarLista(partidasCampo)) {
+      if (item == null || item.trim().isEmpty())
+        continue;
+      partidasLobby.put(separarValores(item, "id"), item);
+    }
+    atualizarListaPartidasDoServidor(partidasCampo);
+  }
+
+  // Verifica a versão de um evento do lobby incremental: eventos antigos são
+  // ignorados e se pulamos alguma versão pedimos o estado completo de novo
+  private boolean aceitarEventoLobby(String valoresServer) {
+    if (versaoLobby < 0) {
+      return false; // ainda esperando o estado completo
+    }
+    long versao;
+    try {
+      versao = Long.parseLong(separarValores(valoresServer, "versao"));
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    if (versao <= versaoLobby) {
+      return false;
+    }
+    if (versao != versaoLobby + 1) {
+      versaoLobby = -1;
+      if (connection != null && connection.isConnected() && jogadorAtual != null && token != null) {
+        connection.sendLine("DELTALOBBY");
+      }
+      return false;
+    }
+    versaoLobby = versao;
+    return true;
+  }
+
   // Atualiza a lista de partidas públicas a partir do campo 'partidas:{...}'
   private void atualizarListaPartidasDoServidor(String listaCampo) {
     if (listaCampo == null) {
@@ -1294,7 +1389,7 @@ public class Jogo extends JFrame {
 
           // Envia o comando para o servidor. The button text will only change to
           // "entrou" when the server confirms with an ENTARPARTIDA|200 response.
-          connection.sendLine("ENTRARPARTIDA " + jogadorAtual + " " + token + " " + idKey);
+          connection.sendLine("ENTRARPARTIDA " + idKey);
         });
 
         // Se já estivermos marcados como tendo entrado nesta partida, ajustar o rótulo
@@ -1347,6 +1442,8 @@ public class Jogo extends JFrame {
           connection.connect();
 
           // Envia mensagem de cadastro – ajuste o protocolo conforme seu servidor
+          // Depois do cadastro a conexão fica ligada ao jogador no servidor, por
+          // isso os outros comandos são enviados sem o nome e o token
           connection.sendLine("CADASTRO " + nome);
         } catch (IOException ex) {
           erro = ex.getMessage();
@@ -1378,8 +1475,7 @@ public class Jogo extends JFrame {
     worker.execute();
   }
 
-  // Envia mensagem de chat para o servidor no formato: CHATGLOBAL <jogadorAtual>
-  // <token> <mensagem>
+  // Envia mensagem de chat para o servidor no formato: CHATGLOBAL <mensagem>
   // Não faz append local; o servidor deverá ecoar a mensagem de volta para todos.
   private void enviarMensagemChat() {
     if (chatInputField == null)
@@ -1404,7 +1500,7 @@ public class Jogo extends JFrame {
 
     if (connection != null && connection.isConnected()) {
       // Envia exatamente no formato pedido (separado por espaços)
-      connection.sendLine("CHATGLOBAL " + jogadorAtual + " " + token + " " + texto);
+      connection.sendLine("CHATGLOBAL " + texto);
       // Não fazemos append local — o servidor deverá reenviar a mensagem para todos
       chatInputField.setText("");
     } else {
@@ -1414,7 +1510,7 @@ public class Jogo extends JFrame {
   }
 
   // Envia mensagem de chat da partida para o servidor no formato:
-  // CHATPARTIDA <jogadorAtual> <token> <mensagem>
+  // CHATPARTIDA <mensagem>
   private void enviarMensagemChatPartida() {
     if (partidaChatInputField == null)
       return;
@@ -1437,7 +1533,7 @@ public class Jogo extends JFrame {
     }
 
     if (connection != null && connection.isConnected()) {
-      connection.sendLine("CHATPARTIDA " + jogadorAtual + " " + token + " " + texto);
+      connection.sendLine("CHATPARTIDA " + texto);
       // Esperamos que o servidor reenvie a mensagem; apenas limpar o input localmente
       partidaChatInputField.setText("");
     } else {
@@ -1558,10 +1654,11 @@ public class Jogo extends JFrame {
               startKeepalive();
             }
 
-            // Após entrar na Home, solicitar lista atual de jogadores
+            // Após entrar na Home, pede o lobby incremental: o servidor envia
+            // as listas completas uma vez e depois só as mudanças
             if (connection != null && connection.isConnected()) {
-              connection.sendLine("LISTARJOGADORES");
-              connection.sendLine("LISTARPARTIDAS");
+              versaoLobby = -1;
+              connection.sendLine("DELTALOBBY");
             }
           } else {
             // Falha: mostrar a mensagem do servidor na label de status (sem popup)
@@ -1597,19 +1694,7 @@ public class Jogo extends JFrame {
         }
         case "LISTARJOGADORES": {
           if ("200".equals(codigoServer)) {
-            String jogadoresLista = separarValores(valoresServer, "jogadores");
-            String jogadores[] = separarLista(jogadoresLista);
-            String csv = "";
-            for (String j : jogadores) {
-              if (csv.length() > 0) {
-                csv += ",";
-              }
-              String nome = separarValores(j, "nome");
-              if (!jogadorAtual.equals(nome)) {
-                csv += nome;
-              }
-            }
-            atualizarListaJogadoresDoServidor(csv);
+            carregarJogadoresLobby(separarValores(valoresServer, "jogadores"));
           } else {
             // erro ao listar – opcionalmente exibir no chat
             if (mensagensArea != null) {
@@ -1620,8 +1705,7 @@ public class Jogo extends JFrame {
         }
         case "LISTARPARTIDAS": {
           if ("200".equals(codigoServer)) {
-            String partidasCampo = separarValores(valoresServer, "partidas");
-            atualizarListaPartidasDoServidor(partidasCampo);
+            carregarPartidasLobby(separarValores(valoresServer, "partidas"));
           } else {
             if (mensagensArea != null) {
               mensagensArea.append("Falha ao listar partidas: " + textoServer + "\n");
@@ -1629,6 +1713,78 @@ public class Jogo extends JFrame {
           }
           break;
         }
+        case "DELTALOBBY": {
+          // Estado completo do lobby, a partir da versão recebida aplicamos só
+          // os eventos
+          if ("200".equals(codigoServer)) {
+            carregarJogadoresLobby(separarValores(valoresServer, "jogadores"));
+            carregarPartidasLobby(separarValores(valoresServer, "partidas"));
+            try {
+              versaoLobby = Long.parseLong(separarValores(valoresServer, "versao"));
+            } catch (NumberFormatException e) {
+              versaoLobby = -1;
+            }
+          }
+          break;
+        }
+        case "JOGADORENTROU": {
+          if (!aceitarEventoLobby(valoresServer))
+            break;
+          String nome = separarValores(valoresServer, "nome");
+          if (nome != null && !nome.equals(jogadorAtual) && !jogadoresModel.contains(nome)) {
+            jogadoresModel.addElement(nome);
+            atualizarListaJogadores();
+          }
+          break;
+        }
+        case "JOGADORSAIU": {
+          if (!aceitarEventoLobby(valoresServer))
+            break;
+          String nome = separarValores(valoresServer, "nome");
+          if (nome != null && jogadoresModel.removeElement(nome)) {
+            atualizarListaJogadores();
+          }
+          break;
+        }
+        case "PARTIDAATUALIZADA": {
+          if (!aceitarEventoLobby(valoresServer))
+            break;
+          String partida = separarValores(valoresServer, "partida");
+          if (partida != null && partida.length() >= 2) {
+            String info = partida.substring(1, partida.length() - 1);
+            partidasLobby.put(separarValores(info, "id"), info);
+            atualizarListaPartidasDoServidor("{" + String.join(";", partidasLobby.values()) + "}");
+          }
+          break;
+        }
+        case "LOBBYATUALIZADO": {
+          // Várias mudanças do lobby juntadas pelo servidor numa única versão
+          if (!aceitarEventoLobby(valoresServer))
+            break;
+          for (String j : separarLista(separarValores(valoresServer, "entraram"))) {
+            String nome = separarValores(j, "nome");
+            if (nome != null && !nome.equals(jogadorAtual) && !jogadoresModel.contains(nome)) {
+              jogadoresModel.addElement(nome);
+            }
+          }
+          for (String j : separarLista(separarValores(valoresServer, "sairam"))) {
+            String nome = separarValores(j, "nome");
+            if (nome != null) {
+              jogadoresModel.removeElement(nome);
+            }
+          }
+          atualizarListaJogadores();
+          String[] partidas = separarLista(separarValores(valoresServer, "partidas"));
+          for (String info : partidas) {
+            if (info == null || info.trim().isEmpty())
+              continue;
+            partidasLobby.put(separarValores(info, "id"), info);
+          }
+          if (partidas.length > 0 && !partidas[0].isEmpty()) {
+            atualizarListaPartidasDoServidor("{" + String.join(";", partidasLobby.values()) + "}");
+          }
+          break;
+        }
         case "ENTRARPARTIDA": {
           // Server response to a request to enter a public game
           String id = separarValores(valoresServer, "id");
@@ -1727,7 +1883,7 @@ public class Jogo extends JFrame {
             btnAceitar.addActionListener(ev -> {
               // Envia aceitação para o servidor; formato padrão usado no projeto
               if (connection != null && connection.isConnected()) {
-                connection.sendLine("ACEITARDESAFIO " + jogadorAtual + " " + token + " " + challenger);
+                connection.sendLine("ACEITARDESAFIO " + challenger);
               }
               incomingChallengesPanel.remove(challengeRow);
               incomingChallengesPanel.revalidate();
@@ -1736,7 +1892,7 @@ public class Jogo extends JFrame {
 
             btnRecusar.addActionListener(ev -> {
               if (connection != null && connection.isConnected()) {
-                connection.sendLine("RECUSARDESAFIO " + jogadorAtual + " " + token + " " + challenger);
+                connection.sendLine("RECUSARDESAFIO " + challenger);
               }
               incomingChallengesPanel.remove(challengeRow);
               incomingChallengesPanel.revalidate();
@@ -1799,11 +1955,20 @@ public class Jogo extends JFrame {
           } catch (NumberFormatException ignore) {
           }
 
+          // Tamanho do tabuleiro desta partida (servidores antigos não enviam)
+          String tamanhoStr = separarValores(valoresServer, "tamanho");
+          int tamanho = 16;
+          try {
+            tamanho = Integer.parseInt(tamanhoStr == null ? "16" : tamanhoStr);
+          } catch (NumberFormatException ignore) {
+          }
+          boardSize = Math.max(1, tamanho);
+
           // Reinicia estado básico do tabuleiro (posicional)
           iniciarPartida();
           // Posiciona jogador conforme informado pelo servidor
-          playerX = clamp(rx, 0, BOARD_SIZE - 1);
-          playerY = clamp(ry, 0, BOARD_SIZE - 1);
+          playerX = clamp(rx, 0, boardSize - 1);
+          playerY = clamp(ry, 0, boardSize - 1);
           // Turno ainda indefinido até o servidor enviar TURNO
           playerTurn = null;
           atualizarStatusTurno();
@@ -1814,7 +1979,7 @@ public class Jogo extends JFrame {
 
           // Depois de carregar a tela, notifica o servidor que estamos prontos
           if (connection != null && connection.isConnected()) {
-            connection.sendLine("PRONTO " + jogadorAtual + " " + token);
+            connection.sendLine("PRONTO");
           }
           break;
         }
@@ -1849,8 +2014,8 @@ public class Jogo extends JFrame {
               try {
                 int mx = Integer.parseInt(xStr);
                 int my = Integer.parseInt(yStr);
-                playerX = clamp(mx, 0, BOARD_SIZE - 1);
-                playerY = clamp(my, 0, BOARD_SIZE - 1);
+                playerX = clamp(mx, 0, boardSize - 1);
+                playerY = clamp(my, 0, boardSize - 1);
                 atualizarTabuleiro();
               } catch (NumberFormatException nfe) {
                 if (gameMessagesArea != null) {
@@ -1892,7 +2057,7 @@ public class Jogo extends JFrame {
             ay = Integer.parseInt(yStr == null ? "0" : yStr);
           } catch (NumberFormatException ignore) {
           }
-          if (ax >= 0 && ax < BOARD_SIZE && ay >= 0 && ay < BOARD_SIZE) {
+          if (ax >= 0 && ax < boardSize && ay >= 0 && ay < boardSize) {
             // Marca o ataque temporariamente na UI por ATTACK_MARK_MS milissegundos.
             final int fx = ax;
             final int fy = ay;
@@ -1940,7 +2105,7 @@ public class Jogo extends JFrame {
           } catch (NumberFormatException ignore) {
           }
 
-          if (sx >= 0 && sx < BOARD_SIZE && sy >= 0 && sy < BOARD_SIZE) {
+          if (sx >= 0 && sx < boardSize && sy >= 0 && sy < boardSize) {
             // Marca o sonar; não alteramos sonarDetected aqui. Confiamos no
             // servidor para enviar DETECTADO quando um sonar detectar alguém.
             sonarMarked[sy][sx] = true;
@@ -2038,18 +2203,23 @@ public class Jogo extends JFrame {
             break;
           }
 
+          if (sx < 0 || sx >= boardSize || sy < 0 || sy >= boardSize)
+            break;
+
           // marca o sonar como existente e sinaliza detecção nesta célula
           sonarMarked[sy][sx] = true;
           sonarDetected[sy][sx] = true;
 
-          // Forçar o texto e cor da célula imediatamente para '*' (detecção)
-          try {
-            JButton cellBtn = boardButtons[sy][sx];
+          // Forçar o texto e cor da célula imediatamente para '*' (detecção),
+          // se ela estiver dentro da janela mostrada
+          int vx = sx - viewX;
+          int vy = sy - viewY;
+          if (vx >= 0 && vx < VIEW_SIZE && vy >= 0 && vy < VIEW_SIZE) {
+            JButton cellBtn = boardButtons[vy][vx];
             if (cellBtn != null) {
               cellBtn.setBackground(new Color(255, 180, 80));
               cellBtn.setText("*");
             }
-          } catch (Exception ignore) {
           }
 
           // se o servidor forneceu um id, registre-o; também atualize
@@ -2107,7 +2277,7 @@ public class Jogo extends JFrame {
               try {
                 int ix = Integer.parseInt(sx == null ? "-1" : sx);
                 int iy = Integer.parseInt(sy == null ? "-1" : sy);
-                if (ix >= 0 && ix < BOARD_SIZE && iy >= 0 && iy < BOARD_SIZE) {
+                if (ix >= 0 && ix < boardSize && iy >= 0 && iy < boardSize) {
                   // Marcar o local atingido temporariamente e limpar após ATTACK_MARK_MS
                   final int fx = ix;
                   final int fy = iy;
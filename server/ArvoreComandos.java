@@ -0,0 +1,67 @@
+package server;
+
+import java.util.*;
+import classes.*;
+
+// Árvore de prefixos (trie) com todos os nomes aceitos para cada comando (as
+// entradas do Tradutor), montada uma única vez
+// Encontrar o comando de uma linha é só percorrer os bytes do primeiro campo,
+// sem criar Strings, sem toUpperCase e sem consultar o HashMap do Tradutor
+public class ArvoreComandos {
+  // Os nomes dos comandos só têm letras de A a Z
+  private static final int LETRAS = 26;
+
+  // filhos[no * LETRAS + letra] é o próximo nó, 0 se não existe (o nó 0 é a
+  // raiz e nunca é filho de ninguém)
+  private int[] filhos = new int[64 * LETRAS];
+  // Comando que termina em cada nó, null se nenhum nome termina nele
+  private Comando[] comandos = new Comando[64];
+  private int numNos = 1;
+
+  public ArvoreComandos(Tradutor tradutor) {
+    for (Map.Entry<String, String> traducao : tradutor.getTraducoes().entrySet()) {
+      adicionar(traducao.getKey(), Comando.valueOf(traducao.getValue()));
+    }
+  }
+
+  private void adicionar(String nome, Comando comando) {
+    int no = 0;
+    for (int i = 0; i < nome.length(); i++) {
+      int letra = Character.toUpperCase(nome.charAt(i)) - 'A';
+      if (letra < 0 || letra >= LETRAS) {
+        throw new IllegalArgumentException("Nome de comando invalido: " + nome);
+      }
+      int indice = no * LETRAS + letra;
+      if (filhos[indice] == 0) {
+        if (numNos == comandos.length) {
+          filhos = Arrays.copyOf(filhos, filhos.length * 2);
+          comandos = Arrays.copyOf(comandos, comandos.length * 2);
+        }
+        filhos[indice] = numNos++;
+      }
+      no = filhos[indice];
+    }
+    comandos[no] = comando;
+  }
+
+  // Procura o comando escrito em dados[inicio, fim), sem diferenciar maiúsculas
+  // e minúsculas, retorna DESCONHECIDO se não existir
+  public Comando buscar(byte[] dados, int inicio, int fim) {
+    int no = 0;
+    for (int i = inicio; i < fim; i++) {
+      int c = dados[i];
+      if (c >= 'a' && c <= 'z') {
+        c -= 'a' - 'A';
+      }
+      if (c < 'A' || c > 'Z') {
+        return Comando.DESCONHECIDO;
+      }
+      no = filhos[no * LETRAS + (c - 'A')];
+      if (no == 0) {
+        return Comando.DESCONHECIDO;
+      }
+    }
+    Comando comando = comandos[no];
+    return comando == null ? Comando.DESCONHECIDO : comando;
+  }
+}
@@ -0,0 +1,67 @@
+package server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Caixa de mensagens de uma partida em andamento: comandos dos jogadores e
+// expirações do turno entram como tarefas e são executados um de cada vez, na
+// ordem em que chegaram, pela thread do shard da partida (ver ShardsPartidas)
+// Só as tarefas da caixa mexem no estado da partida, então a partida não
+// precisa de trava e duas partidas do mesmo shard nunca disputam a thread por
+// muito tempo (cada execução roda no máximo TAREFAS_POR_EXECUCAO tarefas e
+// devolve a thread)
+public class CaixaPartida implements Executor {
+  private static final int TAREFAS_POR_EXECUCAO = 64;
+
+  private final ShardsPartidas.Shard shard;
+  private final ConcurrentLinkedQueue<Runnable> tarefas = new ConcurrentLinkedQueue<>();
+  // true enquanto há uma execução agendada ou rodando no executor
+  private final AtomicBoolean agendada = new AtomicBoolean(false);
+
+  public CaixaPartida(ShardsPartidas.Shard shard) {
+    this.shard = shard;
+  }
+
+  @Override
+  public void execute(Runnable tarefa) {
+    shard.tarefaEnfileirada();
+    tarefas.add(tarefa);
+    agendar();
+  }
+
+  private void agendar() {
+    if (agendada.compareAndSet(false, true)) {
+      shard.execute(this::executarTarefas);
+    }
+  }
+
+  // Roda as tarefas da fila, tudo que elas enviarem para os clientes é
+  // descarregado de uma vez no fim
+  private void executarTarefas() {
+    Conexao.iniciarLote();
+    try {
+      for (int i = 0; i < TAREFAS_POR_EXECUCAO; i++) {
+        Runnable tarefa = tarefas.poll();
+        if (tarefa == null) {
+          break;
+        }
+        try {
+          tarefa.run();
+        } catch (Exception e) {
+          // Uma tarefa com erro não pode parar as próximas da partida
+          e.printStackTrace();
+        } finally {
+          shard.tarefaExecutada();
+        }
+      }
+    } finally {
+      Conexao.finalizarLote();
+      agendada.set(false);
+    }
+    // Chegou tarefa depois do último poll (ou o limite foi atingido)
+    if (!tarefas.isEmpty()) {
+      agendar();
+    }
+  }
+}
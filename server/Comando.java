@@ -0,0 +1,46 @@
+package server;
+
+import classes.*;
+
+// Comandos do protocolo do cliente, cada um com o tipo usado nas respostas e
+// se precisa de um cliente autenticado (nome e token, ou a sessão da conexão)
+// Os nomes alternativos de cada comando ficam no Tradutor
+public enum Comando {
+  CADASTRAR(Constants.TIPOCADASTRAR, false),
+  LISTARPARTIDAS(Constants.TIPOLISTARPARTIDAS, false),
+  LISTARJOGADORES(Constants.TIPOLISTARJOGADORES, false),
+  ENTRARPARTIDA(Constants.TIPOENTRARPARTIDA, true),
+  DESAFIAR(Constants.TIPODESAFIAR, true),
+  ACEITARDESAFIO(Constants.TIPOACEITARDESAFIO, true),
+  RECUSARDESAFIO(Constants.TIPORECUSARDESAFIO, true),
+  CHATGLOBAL(Constants.TIPOCHATGLOBAL, true),
+  CHATPARTIDA(Constants.TIPOCHATPARTIDA, true),
+  CHATJOGADOR(Constants.TIPOCHATJOGADOR, true),
+  PRONTOPARTIDA(Constants.TIPOPRONTOPARTIDA, true),
+  MOVER(Constants.TIPOMOVER, true),
+  ATACAR(Constants.TIPOATACAR, true),
+  SONAR(Constants.TIPOSONAR, true),
+  PASSAR(Constants.TIPOPASSAR, true),
+  SAIRPARTIDA(Constants.TIPOSAIRPARTIDA, true),
+  SAIR(Constants.TIPOSAIR, true),
+  KEEPALIVE(Constants.TIPOKEEPALIVE, true),
+  DELTALOBBY(Constants.TIPODELTALOBBY, true),
+  RETOMAR(Constants.TIPORETOMAR, false),
+  DESCONHECIDO("DESCONHECIDO", false);
+
+  private final String tipo;
+  private final boolean autenticado;
+
+  Comando(String tipo, boolean autenticado) {
+    this.tipo = tipo;
+    this.autenticado = autenticado;
+  }
+
+  public String getTipo() {
+    return this.tipo;
+  }
+
+  public boolean isAutenticado() {
+    return this.autenticado;
+  }
+}
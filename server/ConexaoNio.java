@@ -0,0 +1,152 @@
+package server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Conexão de um cliente atendido por um loop NIO (ServidorNio.LoopNio)
+// A leitura e a escrita no canal só acontecem na thread do loop, que é o
+// escritor da conexão: as outras threads (timers, comandos de outros clientes)
+// apenas colocam as linhas na fila de saída e, ao descarregar, pedem para o
+// loop ativar o interesse de escrita
+public class ConexaoNio extends Conexao {
+  private static final int TAMANHO_BUFFER = 8192;
+
+  private final SocketChannel canal;
+  private final SelectionKey key;
+  private final ServidorNio.LoopNio loop;
+  private final String endereco;
+
+  // Linha que está chegando, os bytes ficam nela até chegar o \n
+  private final LinhaComando linha = new LinhaComando();
+
+  // Buffer de saída (em modo de escrita) com as linhas retiradas da fila que o
+  // canal ainda não aceitou, usado apenas pela thread do loop
+  private final ByteBuffer saida = ByteBuffer.allocate(TAMANHO_BUFFER);
+  // Mensagem retirada da fila que não coube inteira no buffer de saída
+  private Mensagem mensagemAtual = null;
+  private int posicaoMensagemAtual = 0;
+  private final AtomicBoolean escritaAgendada = new AtomicBoolean(false);
+  private volatile boolean fecharAposEscrita = false;
+  private volatile boolean fechada = false;
+
+  ConexaoNio(SocketChannel canal, SelectionKey key, ServidorNio.LoopNio loop) {
+    this.canal = canal;
+    this.key = key;
+    this.loop = loop;
+    Socket socket = canal.socket();
+    this.endereco = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+  }
+
+  SocketChannel getCanal() {
+    return this.canal;
+  }
+
+  LinhaComando getLinha() {
+    return this.linha;
+  }
+
+  protected void descarregar() {
+    agendarEscrita();
+  }
+
+  // Fecha a conexão depois que a fila de saída for enviada, assim a resposta
+  // do SAIR ainda chega ao cliente
+  public void fechar() {
+    fecharAposEscrita = true;
+    escritaAgendada.set(true);
+    loop.executarNoLoop(this::ativarEscrita);
+  }
+
+  protected void fecharImediatamente() {
+    fechada = true;
+    loop.executarNoLoop(this::fecharAgora);
+  }
+
+  public boolean isFechada() {
+    return fechada || fecharAposEscrita;
+  }
+
+  public String getEndereco() {
+    return this.endereco;
+  }
+
+  // Pede para o loop ativar o interesse de escrita, apenas uma vez até a fila
+  // ser esvaziada
+  private void agendarEscrita() {
+    if (escritaAgendada.compareAndSet(false, true)) {
+      loop.executarNoLoop(this::ativarEscrita);
+    }
+  }
+
+  // Executado na thread do loop
+  private void ativarEscrita() {
+    if (key.isValid()) {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  // Executado na thread do loop quando o canal pode ser escrito
+  void escreverPendentes() throws IOException {
+    while (true) {
+      preencherSaida();
+      if (saida.position() == 0) {
+        break;
+      }
+      saida.flip();
+      canal.write(saida);
+      boolean incompleto = saida.hasRemaining();
+      saida.compact();
+      if (incompleto) {
+        // Buffer do socket cheio, continua no próximo OP_WRITE
+        return;
+      }
+    }
+    if (fecharAposEscrita) {
+      fecharAgora();
+      return;
+    }
+    key.interestOps(SelectionKey.OP_READ);
+    escritaAgendada.set(false);
+    // Outra thread pode ter colocado uma linha na fila entre o último
+    // retirarMensagem e o set
+    if (getTamanhoFila() > 0) {
+      agendarEscrita();
+    }
+  }
+
+  // Junta no buffer de saída o máximo de linhas da fila que couberem, para
+  // escrever várias linhas com um único write
+  private void preencherSaida() {
+    while (saida.hasRemaining()) {
+      if (mensagemAtual == null) {
+        mensagemAtual = retirarMensagem();
+        posicaoMensagemAtual = 0;
+        if (mensagemAtual == null) {
+          return;
+        }
+      }
+      int copiados = mensagemAtual.copiar(posicaoMensagemAtual, saida.array(), saida.position(), saida.remaining());
+      saida.position(saida.position() + copiados);
+      posicaoMensagemAtual += copiados;
+      if (posicaoMensagemAtual == mensagemAtual.getTamanho()) {
+        mensagemAtual = null;
+      }
+    }
+  }
+
+  // Fecha o canal imediatamente, descartando o que estiver pendente
+  void fecharAgora() {
+    fechada = true;
+    limparFila();
+    key.cancel();
+    try {
+      canal.close();
+    } catch (IOException e) {
+      // Ignora
+    }
+  }
+}
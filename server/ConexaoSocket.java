@@ -0,0 +1,262 @@
+package server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Conexão de um cliente atendido por uma thread própria (modo threads) ou por
+// uma thread virtual (modo virtual)
+// A thread do cliente só lê, quem escreve são os EscritoresSocket: as linhas
+// retiradas da fila são juntadas num buffer de bytes que vive enquanto a
+// conexão existir
+// No modo threads o canal do socket é não bloqueante: a thread do cliente
+// espera os bytes num seletor de leitura próprio da conexão (ver ler) e um dos
+// loops de escrita escreve só o que o socket aceitar, então um cliente que não
+// lê não prende nenhuma escritora. No modo virtual o socket é bloqueante e cada
+// descarga escreve numa thread virtual nova
+public class ConexaoSocket extends Conexao {
+  private static final int TAMANHO_BUFFER = 8192;
+  // A espera da leitura confere de tempos em tempos se o canal foi fechado
+  private static final long ESPERA_LEITURA_MS = 1000;
+
+  private final Socket socket;
+  private final String endereco;
+  private final EscritoresSocket escritores;
+  // Modo threads: canal não bloqueante, seletor de leitura e loop de escrita
+  // da conexão. Modo virtual: streams do socket bloqueante
+  private final SocketChannel canal;
+  private final Selector seletorLeitura;
+  private final EscritoresSocket.LoopEscrita loop;
+  private final InputStream entrada;
+  private final OutputStream saida;
+
+  // Usados apenas por quem está escrevendo (o loop de escrita ou a thread da
+  // descarga): buffer em modo de escrita com as linhas retiradas da fila que
+  // ainda não foram enviadas e a mensagem que não coube inteira nele
+  private final ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+  private Mensagem mensagemAtual = null;
+  private int posicaoMensagemAtual = 0;
+  // Usados apenas pelo loop de escrita: a chave no seletor do loop (criada na
+  // primeira escrita incompleta) e o instante (System.nanoTime) da última vez
+  // que o socket aceitou bytes enquanto sobrava o que escrever, 0 se não sobrou
+  private SelectionKey key;
+  private long esperaDesde = 0;
+  // true enquanto a conexão está agendada ou esperando o socket, assim só um
+  // escritor por vez mexe no buffer e no socket
+  private final AtomicBoolean agendada = new AtomicBoolean(false);
+  private volatile boolean fecharAposEscrita = false;
+
+  public ConexaoSocket(Socket socket, EscritoresSocket escritores) throws IOException {
+    this.socket = socket;
+    this.endereco = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+    this.escritores = escritores;
+    SocketChannel canalSocket = socket.getChannel();
+    if (canalSocket != null && !canalSocket.isBlocking()) {
+      this.canal = canalSocket;
+      this.seletorLeitura = Selector.open();
+      canalSocket.register(seletorLeitura, SelectionKey.OP_READ);
+      this.loop = escritores.escolherLoop();
+      this.entrada = null;
+      this.saida = null;
+    } else {
+      this.canal = null;
+      this.seletorLeitura = null;
+      this.loop = null;
+      this.entrada = socket.getInputStream();
+      this.saida = socket.getOutputStream();
+    }
+  }
+
+  public Socket getSocket() {
+    return this.socket;
+  }
+
+  EscritoresSocket.LoopEscrita getLoop() {
+    return this.loop;
+  }
+
+  // Lê os bytes que o cliente enviou, retorna -1 no fim da conexão. Usado só
+  // pela thread da conexão
+  public int ler(byte[] destino) throws IOException {
+    if (canal == null) {
+      return entrada.read(destino);
+    }
+    ByteBuffer alvo = ByteBuffer.wrap(destino);
+    while (true) {
+      int lidos = canal.read(alvo);
+      if (lidos != 0) {
+        return lidos;
+      }
+      seletorLeitura.select(ESPERA_LEITURA_MS);
+      seletorLeitura.selectedKeys().clear();
+    }
+  }
+
+  // Chamado pela thread da conexão quando ela para de ler
+  public void encerrarLeitura() {
+    if (seletorLeitura != null) {
+      try {
+        seletorLeitura.close();
+      } catch (IOException e) {
+        // Ignora
+      }
+    }
+  }
+
+  protected void descarregar() {
+    agendar();
+  }
+
+  private void agendar() {
+    if (agendada.compareAndSet(false, true)) {
+      escritores.agendar(this);
+    }
+  }
+
+  // Modo virtual, chamado na thread da descarga: envia tudo que estiver na
+  // fila com a escrita bloqueante
+  void atender() {
+    try {
+      while (preencherBuffer()) {
+        saida.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+      }
+      saida.flush();
+      if (fecharAposEscrita) {
+        limparFila();
+        fecharSocket();
+      }
+    } catch (IOException e) {
+      if (!socket.isClosed()) {
+        System.err.println("Erro ao enviar para o cliente " + getEndereco() + ": " + e.getMessage());
+      }
+      limparFila();
+      fecharSocket();
+    } finally {
+      agendada.set(false);
+    }
+    // Chegou linha (ou o pedido para fechar) depois do último retirarMensagem
+    if (!socket.isClosed() && (getTamanhoFila() > 0 || fecharAposEscrita)) {
+      agendar();
+    }
+  }
+
+  // Modo threads, chamado no loop de escrita: escreve o que o socket aceitar,
+  // o resto fica no buffer esperando o OP_WRITE
+  void escreverPendentes(long agora) throws IOException {
+    while (preencherBuffer()) {
+      buffer.flip();
+      int escritos = canal.write(buffer);
+      boolean incompleto = buffer.hasRemaining();
+      buffer.compact();
+      if (incompleto) {
+        // Buffer do socket cheio, o prazo só conta enquanto nada é aceito
+        if (escritos > 0 || esperaDesde == 0) {
+          esperaDesde = agora;
+        }
+        interesse(SelectionKey.OP_WRITE);
+        return;
+      }
+    }
+    esperaDesde = 0;
+    if (fecharAposEscrita) {
+      fecharAgora();
+      return;
+    }
+    interesse(0);
+    agendada.set(false);
+    // Outra thread pode ter colocado uma linha na fila entre o último
+    // retirarMensagem e o set
+    if (getTamanhoFila() > 0) {
+      agendar();
+    }
+  }
+
+  private void interesse(int operacoes) throws IOException {
+    if (key == null) {
+      if (operacoes != 0) {
+        key = canal.register(loop.getSeletor(), operacoes, this);
+      }
+    } else {
+      key.interestOps(operacoes);
+    }
+  }
+
+  // Junta no buffer o máximo de linhas da fila que couberem, para escrever
+  // várias linhas de uma vez. Retorna false se não há nada para escrever
+  private boolean preencherBuffer() {
+    while (buffer.hasRemaining()) {
+      if (mensagemAtual == null) {
+        mensagemAtual = retirarMensagem();
+        posicaoMensagemAtual = 0;
+        if (mensagemAtual == null) {
+          break;
+        }
+      }
+      int copiados = mensagemAtual.copiar(posicaoMensagemAtual, buffer.array(), buffer.position(),
+          buffer.remaining());
+      buffer.position(buffer.position() + copiados);
+      posicaoMensagemAtual += copiados;
+      if (posicaoMensagemAtual == mensagemAtual.getTamanho()) {
+        mensagemAtual = null;
+      }
+    }
+    return buffer.position() > 0;
+  }
+
+  // Usado pelo vigia do loop de escrita
+  boolean esperandoHaMaisDe(long agora, long limite) {
+    return esperaDesde != 0 && agora - esperaDesde > limite;
+  }
+
+  // Chamado pelo vigia do loop de escrita. Fecha sem esperar o envio do que já
+  // está no buffer do sistema, o cliente não lê
+  void fecharPorEscritaLenta() {
+    try {
+      socket.setSoLinger(true, 0);
+    } catch (IOException e) {
+      // Ignora
+    }
+    fecharAgora();
+  }
+
+  // Modo threads, no loop de escrita: fecha o canal descartando o pendente
+  void fecharAgora() {
+    limparFila();
+    if (key != null) {
+      key.cancel();
+    }
+    fecharSocket();
+  }
+
+  // Fecha depois que o escritor enviar o que ainda estiver na fila (por exemplo
+  // a resposta do SAIR)
+  public void fechar() {
+    fecharAposEscrita = true;
+    agendar();
+  }
+
+  protected void fecharImediatamente() {
+    fecharSocket();
+    limparFila();
+  }
+
+  private void fecharSocket() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Ignora
+    }
+  }
+
+  public boolean isFechada() {
+    return fecharAposEscrita || socket.isClosed();
+  }
+
+  public String getEndereco() {
+    return this.endereco;
+  }
+}
@@ -0,0 +1,213 @@
+package server;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import classes.*;
+
+// Classe que envia as mudanças do lobby (jogadores entrando ou saindo e
+// partidas públicas mudando) para os clientes
+// As mudanças são juntadas durante uma janela curta (Constants.JANELA_LOBBY_MS)
+// e enviadas de uma vez, assim quando vários clientes se cadastram ou várias
+// partidas acabam ao mesmo tempo cada cliente recebe uma atualização por janela
+// em vez de uma por mudança
+public class DifusorLobby {
+  private final GameManager gameManager;
+  private final ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor();
+
+  // Versão do lobby, incrementada a cada envio, os clientes com lobby
+  // incremental usam ela para saber se perderam alguma atualização e precisam
+  // pedir o estado completo de novo
+  // A trava garante que as atualizações entram nas filas dos clientes na mesma
+  // ordem das versões
+  private final ReentrantLock trava = new ReentrantLock();
+  private long versao = 0;
+
+  // Mudanças da janela atual, protegidas pela trava
+  // Para os jogadores vale a última mudança: true se entrou, false se saiu
+  private final Map<String, Boolean> jogadoresAlterados = new LinkedHashMap<>();
+  private final Map<Integer, Partida> partidasAlteradas = new LinkedHashMap<>();
+  private boolean envioAgendado = false;
+
+  // Quantas mudanças aconteceram e quantos envios foram feitos, a diferença é
+  // quantas notificações deixaram de ser enviadas por causa da janela
+  private final AtomicLong totalMudancas = new AtomicLong();
+  private final AtomicLong totalEnvios = new AtomicLong();
+
+  public DifusorLobby(GameManager gameManager) {
+    this.gameManager = gameManager;
+  }
+
+  public void jogadorEntrou(Cliente cliente) {
+    registrarJogador(cliente.getNome(), true);
+  }
+
+  public void jogadorSaiu(Cliente cliente) {
+    registrarJogador(cliente.getNome(), false);
+  }
+
+  // Só as partidas públicas aparecem no lobby
+  public void partidaAtualizada(Partida partida) {
+    if (partida == null || partida.getId() > Constants.NUMERO_PARTIDAS) {
+      return;
+    }
+    trava.lock();
+    try {
+      partidasAlteradas.put(partida.getId(), partida);
+      registrarMudanca();
+    } finally {
+      trava.unlock();
+    }
+    if (Constants.JANELA_LOBBY_MS <= 0) {
+      enviar();
+    }
+  }
+
+  private void registrarJogador(String nome, boolean entrou) {
+    trava.lock();
+    try {
+      jogadoresAlterados.put(nome, entrou);
+      registrarMudanca();
+    } finally {
+      trava.unlock();
+    }
+    if (Constants.JANELA_LOBBY_MS <= 0) {
+      enviar();
+    }
+  }
+
+  // Deve ser chamado com a trava, agenda o envio na primeira mudança da janela
+  private void registrarMudanca() {
+    totalMudancas.incrementAndGet();
+    if (Constants.JANELA_LOBBY_MS > 0 && !envioAgendado) {
+      envioAgendado = true;
+      agendador.schedule(this::enviar, Constants.JANELA_LOBBY_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Envia para o cliente o estado completo do lobby com a versão atual e passa
+  // ele para o lobby incremental (comando DELTALOBBY)
+  // Mudanças que ainda estão na janela já aparecem no estado completo e serão
+  // enviadas de novo na próxima versão, o que não tem problema porque aplicar
+  // uma mudança duas vezes dá o mesmo resultado
+  public void enviarEstadoCompleto(Cliente cliente, String tipo) {
+    trava.lock();
+    try {
+      cliente.setLobbyIncremental(true);
+      cliente.enviarLinha(tipo, "200", "Lobby incremental ativado",
+          "versao:" + versao + Constants.SEPARADORATRIBUTO + gameManager.gerarListaJogadores()
+              + Constants.SEPARADORATRIBUTO + gameManager.gerarListaPartidas());
+    } finally {
+      trava.unlock();
+    }
+  }
+
+  // Envia as mudanças acumuladas na janela: quem pediu lobby incremental recebe
+  // um evento com as mudanças e os outros recebem as listas completas que
+  // mudaram, cada uma montada uma única vez
+  // O retrato dos clientes é pego com a trava, assim quem entrou antes da
+  // versão nova recebe ela e quem entrar depois só recebe as próximas (como no
+  // enviarEstadoCompleto)
+  private void enviar() {
+    trava.lock();
+    Conexao.iniciarLote();
+    try {
+      Cliente[] clientes = gameManager.getListaCliente().retrato().getClientes();
+      envioAgendado = false;
+      if (jogadoresAlterados.isEmpty() && partidasAlteradas.isEmpty()) {
+        return;
+      }
+      versao++;
+      Canal.getHistogramaDestinatarios().registrar(clientes.length);
+      Mensagem evento = montarEvento();
+      boolean jogadoresMudaram = !jogadoresAlterados.isEmpty();
+      boolean partidasMudaram = !partidasAlteradas.isEmpty();
+      jogadoresAlterados.clear();
+      partidasAlteradas.clear();
+
+      Mensagem listaJogadores = null;
+      Mensagem listaPartidas = null;
+      for (Cliente clienteAtual : clientes) {
+        if (clienteAtual.isLobbyIncremental()) {
+          clienteAtual.enviar(evento);
+          continue;
+        }
+        if (clienteAtual.getJogoPartida() != null && Constants.CHAT_GLOBAL_SOMENTE_LOBBY) {
+          continue;
+        }
+        if (jogadoresMudaram) {
+          if (listaJogadores == null) {
+            listaJogadores = new Mensagem(Constants.TIPOLISTARJOGADORES, "200", "Jogadores conectados",
+                gameManager.gerarListaJogadores());
+          }
+          clienteAtual.enviar(listaJogadores);
+        }
+        if (partidasMudaram) {
+          if (listaPartidas == null) {
+            listaPartidas = new Mensagem(Constants.TIPOLISTARPARTIDAS, "200", "Partidas publicas",
+                gameManager.gerarListaPartidas());
+          }
+          clienteAtual.enviar(listaPartidas);
+        }
+      }
+      totalEnvios.incrementAndGet();
+    } finally {
+      Conexao.finalizarLote();
+      trava.unlock();
+    }
+  }
+
+  // Monta o evento do lobby incremental, deve ser chamado com a trava
+  // Com uma única mudança usa o evento específico (JOGADORENTROU, JOGADORSAIU
+  // ou PARTIDAATUALIZADA), com mais de uma usa LOBBYATUALIZADO com todas
+  private Mensagem montarEvento() {
+    String prefixo = "versao:" + versao + Constants.SEPARADORATRIBUTO;
+    if (jogadoresAlterados.size() + partidasAlteradas.size() == 1) {
+      if (!jogadoresAlterados.isEmpty()) {
+        Map.Entry<String, Boolean> jogador = jogadoresAlterados.entrySet().iterator().next();
+        if (jogador.getValue()) {
+          return new Mensagem(Constants.TIPOJOGADORENTROU, "200", "Jogador entrou",
+              prefixo + "nome:" + jogador.getKey());
+        }
+        return new Mensagem(Constants.TIPOJOGADORSAIU, "200", "Jogador saiu", prefixo + "nome:" + jogador.getKey());
+      }
+      Partida partida = partidasAlteradas.values().iterator().next();
+      return new Mensagem(Constants.TIPOPARTIDAATUALIZADA, "200", "Partida atualizada",
+          prefixo + "partida:{" + partida.getInfo() + "}");
+    }
+
+    StringBuilder entraram = new StringBuilder();
+    StringBuilder sairam = new StringBuilder();
+    for (Map.Entry<String, Boolean> jogador : jogadoresAlterados.entrySet()) {
+      StringBuilder lista = jogador.getValue() ? entraram : sairam;
+      if (lista.length() > 0) {
+        lista.append(Constants.SEPARADORITEM);
+      }
+      lista.append("nome:").append(jogador.getKey());
+    }
+    StringBuilder partidas = new StringBuilder();
+    for (Partida partida : partidasAlteradas.values()) {
+      if (partidas.length() > 0) {
+        partidas.append(Constants.SEPARADORITEM);
+      }
+      partidas.append(partida.getInfo());
+    }
+    return new Mensagem(Constants.TIPOLOBBYATUALIZADO, "200", "Lobby atualizado",
+        prefixo + "entraram:{" + entraram + "}" + Constants.SEPARADORATRIBUTO + "sairam:{" + sairam + "}"
+            + Constants.SEPARADORATRIBUTO + "partidas:{" + partidas + "}");
+  }
+
+  public long getTotalMudancas() {
+    return totalMudancas.get();
+  }
+
+  public long getTotalEnvios() {
+    return totalEnvios.get();
+  }
+
+  // Notificações que teriam sido enviadas sem a janela e foram juntadas a outras
+  public long getNotificacoesColapsadas() {
+    return totalMudancas.get() - totalEnvios.get();
+  }
+}
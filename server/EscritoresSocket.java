@@ -0,0 +1,155 @@
+package server;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Escritores das conexões dos modos threads e virtual (ConexaoSocket): quem
+// escreve no socket as linhas da fila de saída de cada cliente
+// No modo threads um número fixo de loops de escrita (NUMERO_ESCRITORES_SOCKET)
+// atende todas as conexões, em vez de uma escritora por conexão (que dobraria
+// as threads do sistema por cliente). A escrita é não bloqueante, como no modo
+// nio: o loop escreve o que o socket aceitar e o resto espera o OP_WRITE no
+// seletor do loop, então um cliente que parou de ler nunca segura o loop nem
+// atrasa os outros clientes. A conexão que passar de TEMPO_MAX_ESCRITA_SOCKET
+// sem o socket aceitar nenhum byte é fechada
+// No modo virtual cada descarga roda numa thread virtual nova com a escrita
+// bloqueante, que custa pouco e só prende a própria thread
+public class EscritoresSocket {
+  // De quanto em quanto tempo os loops procuram conexões presas
+  private static final long INTERVALO_VIGIA_MS = 100;
+
+  private final ThreadFactory fabricaThreads;
+  private final LoopEscrita[] loops;
+  private final AtomicInteger proximoLoop = new AtomicInteger();
+  private final AtomicLong descargas = new AtomicLong();
+  private final AtomicLong escritasLentas = new AtomicLong();
+
+  // numeroEscritores 0 cria uma thread por descarga (modo virtual)
+  public EscritoresSocket(int numeroEscritores, ThreadFactory fabricaThreads) throws IOException {
+    this.fabricaThreads = fabricaThreads;
+    this.loops = new LoopEscrita[numeroEscritores];
+    for (int i = 0; i < numeroEscritores; i++) {
+      loops[i] = new LoopEscrita(i);
+    }
+  }
+
+  public void iniciar() {
+    for (LoopEscrita loop : loops) {
+      loop.start();
+    }
+  }
+
+  // true no modo threads, onde os canais das conexões devem ser não bloqueantes
+  public boolean isNaoBloqueante() {
+    return loops.length > 0;
+  }
+
+  // Loop que vai escrever para uma conexão nova, distribuídos em sequência
+  LoopEscrita escolherLoop() {
+    return loops[Math.floorMod(proximoLoop.getAndIncrement(), loops.length)];
+  }
+
+  // Chamado pela conexão, no máximo uma vez até ela ser atendida
+  void agendar(ConexaoSocket conexao) {
+    descargas.incrementAndGet();
+    LoopEscrita loop = conexao.getLoop();
+    if (loop == null) {
+      fabricaThreads.newThread(conexao::atender).start();
+    } else {
+      loop.agendar(conexao);
+    }
+  }
+
+  public int getNumeroEscritores() {
+    return loops.length;
+  }
+
+  public long getDescargas() {
+    return descargas.get();
+  }
+
+  // Conexões fechadas por não aceitarem escrita
+  public long getEscritasLentas() {
+    return escritasLentas.get();
+  }
+
+  // Thread que escreve para um conjunto de conexões com um único Selector, as
+  // conexões só entram no seletor quando o socket não aceitou tudo
+  class LoopEscrita extends Thread {
+    private final Selector seletor;
+    // Conexões com linhas novas na fila, esperando o loop escrever
+    private final Queue<ConexaoSocket> agendadas = new ConcurrentLinkedQueue<>();
+    private long ultimaVigia = System.nanoTime();
+
+    LoopEscrita(int num) throws IOException {
+      super("EscritorSocket-" + num);
+      setDaemon(true);
+      this.seletor = Selector.open();
+    }
+
+    Selector getSeletor() {
+      return this.seletor;
+    }
+
+    void agendar(ConexaoSocket conexao) {
+      agendadas.add(conexao);
+      seletor.wakeup();
+    }
+
+    public void run() {
+      while (true) {
+        try {
+          seletor.select(INTERVALO_VIGIA_MS);
+          long agora = System.nanoTime();
+
+          ConexaoSocket conexao;
+          while ((conexao = agendadas.poll()) != null) {
+            escrever(conexao, agora);
+          }
+
+          Iterator<SelectionKey> it = seletor.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            escrever((ConexaoSocket) key.attachment(), agora);
+          }
+
+          if (agora - ultimaVigia >= TimeUnit.MILLISECONDS.toNanos(INTERVALO_VIGIA_MS)) {
+            ultimaVigia = agora;
+            vigiar(agora);
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    private void escrever(ConexaoSocket conexao, long agora) {
+      try {
+        conexao.escreverPendentes(agora);
+      } catch (IOException | CancelledKeyException e) {
+        // Cliente fechou a conexão ou ela foi fechada por outra thread
+        conexao.fecharAgora();
+      }
+    }
+
+    // Fecha as conexões cujo socket não aceita nada há mais de
+    // TEMPO_MAX_ESCRITA_SOCKET
+    private void vigiar(long agora) {
+      long limite = TimeUnit.MILLISECONDS.toNanos(Constants.TEMPO_MAX_ESCRITA_SOCKET);
+      for (SelectionKey key : seletor.keys()) {
+        ConexaoSocket conexao = (ConexaoSocket) key.attachment();
+        if (key.isValid() && conexao.esperandoHaMaisDe(agora, limite)) {
+          escritasLentas.incrementAndGet();
+          System.err.println("Cliente " + conexao.getEndereco() + " nao le ha mais de "
+              + Constants.TEMPO_MAX_ESCRITA_SOCKET + "ms, desconectando");
+          conexao.fecharPorEscritaLenta();
+        }
+      }
+    }
+  }
+}
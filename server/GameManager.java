@@ -2,9 +2,8 @@ package server;
 
 import java.util.*;
 import classes.*;
-import java.io.*;
-import java.net.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 public class GameManager {
   private int idAutoIncrement;
@@ -12,27 +11,71 @@ public class GameManager {
   // Timer de turno por partida
   // Esses dois foram sugeridos pelo Agente Copilot do VSCode ao pedir como se
   // fazia um turno de 15 segundos
-  private final ScheduledExecutorService turnScheduler = Executors.newScheduledThreadPool(2);
-  private final ConcurrentMap<Integer, ScheduledFuture<?>> turnTimers = new ConcurrentHashMap<>();
-  // Keepalive por cliente
-  private final ScheduledExecutorService keepAliveScheduler = Executors.newScheduledThreadPool(4);
-  private final ConcurrentMap<String, ScheduledFuture<?>> keepAliveTimers = new ConcurrentHashMap<>();
-
-  // Lista para armazenar os clientes conectados
-  // Usando um HashMap para facilitar o acesso por nome ou ID
-  // Só permite um cliente por nome
-  // ChatGPT sugeriu esse HashMap
-  private Map<String, Cliente> listaCliente = Collections.synchronizedMap(new HashMap<>());
-  // Declarando lista de partidas
-  // ChatGPT recomendou usar Collections.synchronizedList para evitar condições de
-  // corrida
-  private List<Partida> partidas = Collections.synchronizedList(new ArrayList<>());
-  private List<JogoPartida> jogoPartidas = Collections.synchronizedList(new ArrayList<>());
+  // Os timers dos turnos ficam numa roda de temporização com uma thread só,
+  // agendar e cancelar o timer de cada turno é O(1)
+  private final RodaTemporizacao rodaTemporizacao = new RodaTemporizacao("roda-temporizacao",
+      Constants.RESOLUCAO_TEMPORIZADORES_MS, Constants.SLOTS_TEMPORIZADORES);
+  private final ConcurrentMap<Integer, RodaTemporizacao.Temporizador> turnTimers = new ConcurrentHashMap<>();
+  // Keepalive: cada comando só atualiza a última atividade do cliente e uma
+  // varredura periódica desconecta os inativos há mais de TEMPO_KEEPALIVE
+  // Os clientes verificados ficam num mapa próprio, percorrer a listaCliente
+  // travaria o cadastro de clientes durante a varredura inteira
+  private final ScheduledExecutorService keepAliveScheduler = Executors.newSingleThreadScheduledExecutor();
+  private final ConcurrentMap<String, Cliente> clientesKeepAlive = new ConcurrentHashMap<>();
+
+  // Clientes conectados, indexados pelo nome (só permite um cliente por nome)
+  // Os broadcasts percorrem o retrato do registro, sem copiar a lista a cada
+  // envio
+  private final RegistroClientes listaCliente = new RegistroClientes();
+  // Clientes que não estão em uma partida em andamento, é o canal do chat
+  // global quando CHAT_GLOBAL_SOMENTE_LOBBY está ativo. Cada partida em
+  // andamento tem o seu canal (JogoPartida.getCanal())
+  private final Canal canalLobby = new Canal("lobby");
+  // Partidas públicas e partidas em andamento indexadas pelo id, a busca por id
+  // não trava nem percorre as outras partidas (com muitos desafios aceitos ao
+  // mesmo tempo a lista de partidas em andamento fica grande)
+  // Para a partida em andamento de um cliente usar Cliente.getJogoPartida()
+  private final ConcurrentMap<Integer, Partida> partidas = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Integer, JogoPartida> jogoPartidas = new ConcurrentHashMap<>();
+
+  // Envia as mudanças do lobby juntando as que acontecem numa janela curta,
+  // criado no iniciar
+  private DifusorLobby difusorLobby;
+
+  // Threads que executam as caixas das partidas em andamento, cada partida tem
+  // a sua caixa (CaixaPartida) e só ela mexe no estado da partida, sempre pela
+  // thread do shard escolhido pelo id da partida
+  private final ShardsPartidas shardsPartidas = new ShardsPartidas(ShardsPartidas.numeroShardsConfigurado());
+
+  // Verificações dispositivo x jogador feitas na detecção dos dispositivos e
+  // turnos em que a detecção rodou, somando todas as partidas
+  private final AtomicLong verificacoesDeteccao = new AtomicLong();
+  private final AtomicLong turnosDeteccao = new AtomicLong();
+  // Turnos resolvidos e tempo gasto na resolução (estado da partida) e no envio
+  // dos eventos, somando todas as partidas
+  private final AtomicLong turnosResolvidos = new AtomicLong();
+  private final AtomicLong nanosResolucaoTurnos = new AtomicLong();
+  private final AtomicLong nanosEnvioTurnos = new AtomicLong();
+
+  // Latência e quantidade dos comandos, códigos de erro e broadcasts
+  private final Metricas metricas = new Metricas();
 
   public GameManager() {
     this.idAutoIncrement = Constants.NUMERO_PARTIDAS + 1;
   }
 
+  // Cria o que precisa do GameManager já construído, deve ser chamado antes de
+  // aceitar conexões
+  public void iniciar() {
+    this.difusorLobby = new DifusorLobby(this);
+    metricas.iniciar();
+    shardsPartidas.iniciar();
+    if (Constants.KEEPALIVE) {
+      int intervalo = Constants.INTERVALO_VARREDURA_KEEPALIVE_MS;
+      keepAliveScheduler.scheduleWithFixedDelay(this::varrerKeepAlives, intervalo, intervalo, TimeUnit.MILLISECONDS);
+    }
+  }
+
   public synchronized int proximoIdAutoIncrement() {
     return idAutoIncrement++;
   }
@@ -41,49 +84,79 @@ public class GameManager {
     idAutoIncrement = Constants.NUMERO_PARTIDAS + 1;
   }
 
-  public Map<String, Cliente> getListaCliente() {
+  public RegistroClientes getListaCliente() {
     return this.listaCliente;
   }
 
+  public Metricas getMetricas() {
+    return this.metricas;
+  }
+
+  public DifusorLobby getDifusorLobby() {
+    return this.difusorLobby;
+  }
+
+  // Partidas públicas, para as estatísticas
+  public Collection<Partida> getPartidas() {
+    return this.partidas.values();
+  }
+
+  public int getNumeroPartidasAndamento() {
+    return this.jogoPartidas.size();
+  }
+
+  public int getTimersTurnoPendentes() {
+    return this.turnTimers.size();
+  }
+
+  public int getKeepAlivesMonitorados() {
+    return this.clientesKeepAlive.size();
+  }
+
+  public ShardsPartidas getShardsPartidas() {
+    return this.shardsPartidas;
+  }
+
+  public long getVerificacoesDeteccao() {
+    return this.verificacoesDeteccao.get();
+  }
+
+  public long getTurnosDeteccao() {
+    return this.turnosDeteccao.get();
+  }
+
+  public long getTurnosResolvidos() {
+    return this.turnosResolvidos.get();
+  }
+
+  public long getNanosResolucaoTurnos() {
+    return this.nanosResolucaoTurnos.get();
+  }
+
+  public long getNanosEnvioTurnos() {
+    return this.nanosEnvioTurnos.get();
+  }
+
   public void criarPartidas() {
+    criarPartidas(Constants.TAMANHO_TABULEIRO);
+  }
+
+  // Cria as partidas públicas com o tamanho de tabuleiro informado
+  public void criarPartidas(int tamanhoTabuleiro) {
     // Loop para criar partidas
     for (int i = 0; i < Constants.NUMERO_PARTIDAS; i++) {
-      partidas.add(new Partida(i + 1, i / 2 + Constants.NUMERO_JOGADORES));
+      partidas.put(i + 1, new Partida(i + 1, i / 2 + Constants.NUMERO_JOGADORES, tamanhoTabuleiro));
     }
   }
 
-  // Método para encontrar uma partida pelo id, percorrendo a lista de partidas e
-  // comparando o id
+  // Método para encontrar uma partida pública pelo id
   public Partida encontrarPartida(int idPartida) {
-    Partida partidaEscolhida = null;
-    synchronized (partidas) {
-      Iterator<Partida> it = partidas.iterator();
-      while (it.hasNext()) {
-        Partida partida = it.next();
-        if (partida.getId() == idPartida) {
-          partidaEscolhida = partida;
-          break;
-        }
-      }
-    }
-    return partidaEscolhida;
+    return partidas.get(idPartida);
   }
 
-  // Método para encontrar uma partida pelo id, percorrendo a lista de partidas e
-  // comparando o id
+  // Método para encontrar uma partida em andamento pelo id
   public JogoPartida encontrarPartidaAndamento(int idPartida) {
-    JogoPartida partidaEscolhida = null;
-    synchronized (jogoPartidas) {
-      Iterator<JogoPartida> it = jogoPartidas.iterator();
-      while (it.hasNext()) {
-        JogoPartida jogoPartida = it.next();
-        if (jogoPartida.getId() == idPartida) {
-          partidaEscolhida = jogoPartida;
-          break;
-        }
-      }
-    }
-    return partidaEscolhida;
+    return jogoPartidas.get(idPartida);
   }
 
   // Método que notifica um único jogador de uma partida com uma mensagem e um
@@ -94,40 +167,35 @@ public class GameManager {
   }
 
   // Método que notifica todos os jogadores de uma partida com uma mensagem e um
-  // valor passado
+  // valor passado, deve ser chamado pela caixa da partida
   public void notificarJogadoresPartida(JogoPartida jogoPartida, String tipo, String codigo, String mensagem,
       String valor) {
-    List<Jogador> jogadoresSnapshot;
-    synchronized (jogoPartida) {
-      jogadoresSnapshot = new ArrayList<>(jogoPartida.getTodosJogadores());
-    }
-    // Percorre todos os clientes da partida e envia a mensagem fora do lock da
-    // partida
-    Iterator<Jogador> it = jogadoresSnapshot.iterator();
-    while (it.hasNext()) {
-      Jogador jogador = it.next();
-      notificarJogadorPartida(jogador, tipo, codigo, mensagem, valor);
-    }
+    // Publica no canal da partida, a linha é codificada uma vez só e a mesma
+    // Mensagem vai para todos
+    jogoPartida.getCanal().publicar(new Mensagem(tipo, codigo, mensagem, valor));
   }
 
-  // Método que notifica todos os clientes conectados
+  // Método que notifica todos os clientes conectados, ou só os do lobby com
+  // CHAT_GLOBAL_SOMENTE_LOBBY
   private void notificarTodos(String tipo, String codigo, String mensagem, String valor) {
-    // Percorre todos os clientes da e envia a mensagem
-    List<Cliente> clientesSnapshot;
-    synchronized (listaCliente) {
-      clientesSnapshot = new ArrayList<>(listaCliente.values());
-    }
-    Iterator<Cliente> it = clientesSnapshot.iterator();
-    while (it.hasNext()) {
-      Cliente clienteAtual = it.next();
-      JogoPartida partidaAndamento = encontrarPartidaAndamento(clienteAtual.getIdPartida());
-      if (partidaAndamento != null && Constants.CHAT_GLOBAL_SOMENTE_LOBBY) {
-        continue;
-      }
-      clienteAtual.enviarLinha(tipo, codigo, mensagem, valor);
+    Canal canal = Constants.CHAT_GLOBAL_SOMENTE_LOBBY ? canalLobby : listaCliente.getCanal();
+    canal.publicar(new Mensagem(tipo, codigo, mensagem, valor));
+  }
+
+  // O cliente deixou a partida em andamento (saiu ou ela terminou) e volta a
+  // receber o chat global
+  private void voltarAoLobby(Cliente cliente) {
+    canalLobby.inscrever(cliente);
+    // sair() pode ter removido o cliente enquanto ele era inscrito
+    if (cliente.isRemovido()) {
+      canalLobby.desinscrever(cliente);
     }
   }
 
+  public Canal getCanalLobby() {
+    return this.canalLobby;
+  }
+
   // Método para tentar iniciar a partida, toda vez que um cliente se conecta a
   // partida ele tentará iniciar a partida, se chama o método iniciarPartida da
   // Partida que apenas muda o estado de andamento, se conseguir, devemos
@@ -141,17 +209,27 @@ public class GameManager {
     }
     if (partidaIniciou) {
       JogoPartida novaPartida = new JogoPartida(partida.getId(), partida.getClientes(), partida);
-      iniciarJogoPartida(novaPartida);
+      iniciarJogoPartida(novaPartida, partida.getClientes());
     }
   }
 
   // Método para iniciar o jogo da partida, adicionando na lista de partidas e
   // notificando os jogadores sobre o inicio da partida e o turno
-  public void iniciarJogoPartida(JogoPartida novaPartida) {
-    synchronized (jogoPartidas) {
-      jogoPartidas.add(novaPartida);
+  // Os clientes passam a apontar para a partida na hora, assim os próximos
+  // comandos deles já vão para a caixa dela, depois da notificação de início
+  public void iniciarJogoPartida(JogoPartida novaPartida, List<Cliente> clientes) {
+    novaPartida.setCaixa(new CaixaPartida(shardsPartidas.shardDaPartida(novaPartida.getId())));
+    jogoPartidas.put(novaPartida.getId(), novaPartida);
+    Iterator<Cliente> itClientes = clientes.iterator();
+    while (itClientes.hasNext()) {
+      Cliente cliente = itClientes.next();
+      cliente.setJogoPartida(novaPartida);
+      canalLobby.desinscrever(cliente);
     }
+    executarNaCaixa(novaPartida, () -> notificarPartidaReservada(novaPartida));
+  }
 
+  private void notificarPartidaReservada(JogoPartida novaPartida) {
     String todosJogadores = "";
     System.out.println("Partida reservada: " + novaPartida.getId());
 
@@ -172,6 +250,7 @@ public class GameManager {
       Jogador jogador = itJogadores.next();
       Posicao posicao = jogador.getPosicao();
       String valor = "x:" + posicao.getX() + Constants.SEPARADORATRIBUTO + "y:" + posicao.getY()
+          + Constants.SEPARADORATRIBUTO + "tamanho:" + novaPartida.getTamanhoTabuleiro()
           + Constants.SEPARADORATRIBUTO + valorTodos;
       notificarJogadorPartida(jogador, Constants.TIPORESERVADOPARTIDA, "200", "Partida reservada", valor);
     }
@@ -179,140 +258,120 @@ public class GameManager {
 
   // Método que passa para o próximo turno da partida e determina os
   // acontecimentos da partida para notificar os jogadores
+  // Primeiro o turno é resolvido (ResolucaoTurno só muda o estado e gera os
+  // eventos) e depois os eventos são enviados, na mesma ordem
   public void proximoTurnoPartida(JogoPartida jogoPartida) {
     // Cancela o timer do turno atual (para evitar disparo durante o processamento)
     cancelarTimerTurno(jogoPartida);
-    
-    lidarJogadoresAtaques(jogoPartida);
 
-    if (verificarFimJogoPartida(jogoPartida)) {
-      return;
+    ResolucaoTurno resolucao = new ResolucaoTurno(jogoPartida);
+    List<EventoTurno> eventos = resolucao.resolver();
+    turnosResolvidos.incrementAndGet();
+    nanosResolucaoTurnos.addAndGet(resolucao.getNanosResolucao());
+    if (!resolucao.isPartidaFinalizada()) {
+      verificacoesDeteccao.addAndGet(resolucao.getVerificacoesDeteccao());
+      turnosDeteccao.incrementAndGet();
     }
 
-    lidarJogadoresDetectados(jogoPartida);
+    long inicioEnvio = System.nanoTime();
+    enviarEventos(jogoPartida, eventos);
+    nanosEnvioTurnos.addAndGet(System.nanoTime() - inicioEnvio);
 
-    proximoTurno(jogoPartida);
+    if (resolucao.isPartidaFinalizada()) {
+      finalizarJogoPartida(jogoPartida);
+      return;
+    }
+    // Agenda o timer para o novo turno
+    agendarTimerTurno(jogoPartida);
 
     jogoPartida.imprimirPartida();
   }
 
   // Método para avançar o turno e notificar os jogadores
   public void proximoTurno(JogoPartida jogoPartida) {
-    // Avança para o próximo turno e captura o jogador do turno de forma atômica
-    String jogadorTurno;
-    synchronized (jogoPartida) {
-      jogadorTurno = "turno:" + jogoPartida.proximoTurno();
-    }
+    String jogadorTurno = "turno:" + jogoPartida.proximoTurno();
 
     notificarJogadoresPartida(jogoPartida, Constants.TIPOTURNO, "200", "Turno do jogador", jogadorTurno);
     // Agenda o timer para o novo turno
     agendarTimerTurno(jogoPartida);
   }
 
-  // Método que notifica o dono do dispositivo sobre os jogadores acertados por
-  // seus misseis
-  public void lidarJogadoresAtaques(JogoPartida jogoPartida) {
-    synchronized (jogoPartida) {
-      List<Missil> misseis = jogoPartida.getMisseis();
-      // Loop de todos os misseis
-      ListIterator<Missil> itMisseis = misseis.listIterator(misseis.size());
-      while (itMisseis.hasPrevious()) {
-        String todosJogadoresAcertados = "";
-        Missil missil = itMisseis.previous();
-
-        int numTurnoAtual = jogoPartida.getNumTurno();
-        int numTurnoMissil = missil.getNum();
-
-        if (numTurnoMissil < numTurnoAtual) {
-          break;
-        }
-
-        if (numTurnoMissil != numTurnoAtual) {
-          continue;
-        }
-
-        // Pega a lista de todos jogadores próximos do missil
-        List<Jogador> jogadoresDetectados = jogoPartida.detectarJogadores(missil);
-        Iterator<Jogador> itJogadoresDetectados = jogadoresDetectados.iterator();
-        while (itJogadoresDetectados.hasNext()) {
-          Jogador jogadorDetectado = itJogadoresDetectados.next();
-          // Notifica o jogador dono do missil sobre o jogador detectado
-          Posicao posicao = jogadorDetectado.getPosicao();
-          if (!todosJogadoresAcertados.isEmpty()) {
-            todosJogadoresAcertados += Constants.SEPARADORITEM;
-          }
-          todosJogadoresAcertados += "nome:" + jogadorDetectado.getNome() + Constants.SEPARADORATRIBUTO + "x:"
-              + posicao.getX() + Constants.SEPARADORATRIBUTO + "y:" + posicao.getY();
-        }
-        if (!todosJogadoresAcertados.isEmpty()) {
-          String valor = "jogadores:{" + todosJogadoresAcertados + "}";
-          notificarJogadorPartida(missil.getJogadorDono(), Constants.TIPOACERTO, "200",
-              "Jogadores acertados pelo missil", valor);
-          // Iterando sobre os jogadores acertados para matá-los
-          Iterator<Jogador> itJogadoresAcertados = jogadoresDetectados.iterator();
-          while (itJogadoresAcertados.hasNext()) {
-            Jogador jogadorAcertado = itJogadoresAcertados.next();
-            jogoPartida.matarJogador(jogadorAcertado);
-            notificarJogadorPartida(jogadorAcertado, Constants.TIPOMORTE, "200",
-                "Voce foi acertado por um missil", "dono:" + missil.getJogadorDono().getNome());
-          }
-        }
+  // Monta e envia as mensagens dos eventos de um turno resolvido
+  private void enviarEventos(JogoPartida jogoPartida, List<EventoTurno> eventos) {
+    Conexao.iniciarLote();
+    try {
+      for (EventoTurno evento : eventos) {
+        enviarEvento(jogoPartida, evento);
       }
+    } finally {
+      Conexao.finalizarLote();
     }
   }
 
-  // Método que notifica o dono do dispositivo sobre os jogadores detectados por
-  // seus dispositivos de proximidade
-  public void lidarJogadoresDetectados(JogoPartida jogoPartida) {
-    synchronized (jogoPartida) {
-      // Loop de todos os dispositivos
-      Iterator<DispositivoProximidade> itDispositivos = jogoPartida.getDispositivos().iterator();
-      while (itDispositivos.hasNext()) {
-        String todosJogadoresDetectados = "";
-        DispositivoProximidade dispositivo = itDispositivos.next();
-        int xDispositivo = dispositivo.getPosicao().getX();
-        int yDispositivo = dispositivo.getPosicao().getY();
-
-        // Pega a lista de todos jogadores próximos do dispositivo
-        List<Jogador> jogadoresDetectados = jogoPartida.detectarJogadores(dispositivo);
-        Iterator<Jogador> itJogadoresDetectados = jogadoresDetectados.iterator();
-        while (itJogadoresDetectados.hasNext()) {
-          Jogador jogadorDetectado = itJogadoresDetectados.next();
-          if (!todosJogadoresDetectados.isEmpty()) {
-            todosJogadoresDetectados += Constants.SEPARADORITEM;
-          }
-          // Notifica o jogador dono do dispositivo sobre o jogador detectado
-          todosJogadoresDetectados += "nome:" + jogadorDetectado.getNome();
-        }
-        if (!todosJogadoresDetectados.isEmpty()) {
-          String valor = "num:" + dispositivo.getNum() + Constants.SEPARADORATRIBUTO + "x:" + xDispositivo
-              + Constants.SEPARADORATRIBUTO + "y:" + yDispositivo + Constants.SEPARADORATRIBUTO + "jogadores:{"
-              + todosJogadoresDetectados + "}";
-          notificarJogadorPartida(dispositivo.getJogadorDono(), Constants.TIPODETECTADO, "200",
-              "Jogadores detectados pelo dispositivo " + dispositivo.getNum(), valor);
-        }
+  private void enviarEvento(JogoPartida jogoPartida, EventoTurno evento) {
+    switch (evento.getTipo()) {
+      case ACERTO:
+        // Notifica o jogador dono do missil sobre os jogadores acertados
+        notificarJogadorPartida(evento.getDestinatario(), Constants.TIPOACERTO, "200",
+            "Jogadores acertados pelo missil", valorAcerto(evento.getJogadores()));
+        break;
+      case MORTE:
+        notificarJogadorPartida(evento.getDestinatario(), Constants.TIPOMORTE, "200",
+            "Voce foi acertado por um missil", "dono:" + evento.getJogador().getNome());
+        break;
+      case DETECCAO:
+        // Notifica o dono do dispositivo sobre os jogadores detectados
+        DispositivoProximidade dispositivo = evento.getDispositivo();
+        notificarJogadorPartida(evento.getDestinatario(), Constants.TIPODETECTADO, "200",
+            "Jogadores detectados pelo dispositivo " + dispositivo.getNum(), valorDeteccao(dispositivo));
+        break;
+      case TURNO:
+        notificarJogadoresPartida(jogoPartida, Constants.TIPOTURNO, "200", "Turno do jogador",
+            "turno:" + evento.getNomeTurno());
+        break;
+      case VITORIA:
+        notificarJogadorPartida(evento.getDestinatario(), Constants.TIPOVITORIA, "200", "Voce e o vencedor!", "");
+        break;
+      case FIM_PARTIDA:
+        Jogador vencedor = evento.getJogador();
+        notificarJogadoresPartida(jogoPartida, Constants.TIPOFIMPARTIDA, "200", "Partida finalizada",
+            "vencedor:" + (vencedor != null ? vencedor.getNome() : "null"));
+        break;
+    }
+  }
+
+  private String valorAcerto(List<Jogador> jogadoresAcertados) {
+    StringBuilder todosJogadoresAcertados = new StringBuilder();
+    for (Jogador jogadorAcertado : jogadoresAcertados) {
+      Posicao posicao = jogadorAcertado.getPosicao();
+      if (todosJogadoresAcertados.length() > 0) {
+        todosJogadoresAcertados.append(Constants.SEPARADORITEM);
       }
+      todosJogadoresAcertados.append("nome:").append(jogadorAcertado.getNome()).append(Constants.SEPARADORATRIBUTO)
+          .append("x:").append(posicao.getX()).append(Constants.SEPARADORATRIBUTO).append("y:").append(posicao.getY());
     }
+    return "jogadores:{" + todosJogadoresAcertados + "}";
   }
 
-  // Método que roda cada turno, se a partida terminou, notifica os jogadores e
-  // chama outra função para finalizar a partida e remover da lista
-  public boolean verificarFimJogoPartida(JogoPartida jogoPartida) {
-    Jogador vencedor = jogoPartida.verificarFimPartida();
-    if (vencedor != null) {
-      notificarJogadorPartida(vencedor, Constants.TIPOVITORIA, "200", "Voce e o vencedor!", "");
-      notificarJogadoresPartida(jogoPartida, Constants.TIPOFIMPARTIDA, "200", "Partida finalizada",
-          "vencedor:" + vencedor.getNome());
-      finalizarJogoPartida(jogoPartida);
-      return true;
+  // A mensagem da detecção fica guardada no dispositivo e só é montada de novo
+  // quando a detecção dele é refeita
+  private String valorDeteccao(DispositivoProximidade dispositivo) {
+    if (dispositivo.getValorDeteccao() != null) {
+      return dispositivo.getValorDeteccao();
     }
-    if (jogoPartida.verificarNenhumJogadorRestante()) {
-      notificarJogadoresPartida(jogoPartida, Constants.TIPOFIMPARTIDA, "200", "Partida finalizada",
-          "vencedor:null");
-      finalizarJogoPartida(jogoPartida);
-      return true;
+    StringBuilder todosJogadoresDetectados = new StringBuilder();
+    for (Jogador jogadorDetectado : dispositivo.getJogadoresDetectados()) {
+      if (todosJogadoresDetectados.length() > 0) {
+        todosJogadoresDetectados.append(Constants.SEPARADORITEM);
+      }
+      todosJogadoresDetectados.append("nome:").append(jogadorDetectado.getNome());
     }
-    return false;
+    Posicao posicao = dispositivo.getPosicao();
+    String valor = "num:" + dispositivo.getNum() + Constants.SEPARADORATRIBUTO + "x:" + posicao.getX()
+        + Constants.SEPARADORATRIBUTO + "y:" + posicao.getY() + Constants.SEPARADORATRIBUTO + "jogadores:{"
+        + todosJogadoresDetectados + "}";
+    dispositivo.setValorDeteccao(valor);
+    return valor;
   }
 
   // Método que seta o estado da partida como finalizada e remove da lista de
@@ -320,57 +379,41 @@ public class GameManager {
   public void finalizarJogoPartida(JogoPartida jogoPartida) {
     jogoPartida.imprimirPartida();
     System.out.println("Partida finalizada: " + jogoPartida.getId());
-    // Atualiza estado dos jogadores e finaliza a partida protegendo o estado da
-    // partida
-    synchronized (jogoPartida) {
-      List<Jogador> todosJogadores = jogoPartida.getTodosJogadores();
-      Iterator<Jogador> it = todosJogadores.iterator();
-      while (it.hasNext()) {
-        Jogador jogador = it.next();
-        Cliente cliente = listaCliente.get(jogador.getNome());
-        if (cliente != null) {
-          cliente.setJogadorDesafiado(null);
-          cliente.setIdPartida(-1);
-        }
+    // Atualiza estado dos jogadores e finaliza a partida
+    // Só mexe nos clientes que ainda apontam para esta partida, um jogador morto
+    // pode ter saído e entrado em outra partida antes desta terminar
+    List<Jogador> todosJogadores = jogoPartida.getTodosJogadores();
+    Iterator<Jogador> it = todosJogadores.iterator();
+    while (it.hasNext()) {
+      Jogador jogador = it.next();
+      Cliente cliente = listaCliente.get(jogador.getNome());
+      if (cliente != null && cliente.getJogoPartida() == jogoPartida) {
+        cliente.setJogadorDesafiado(null);
+        cliente.setIdPartida(-1);
+        cliente.setJogoPartida(null);
+        voltarAoLobby(cliente);
       }
-      jogoPartida.finalizarPartida();
     }
+    jogoPartida.finalizarPartida();
     // Cancela e remove o timer dessa partida
     cancelarTimerTurno(jogoPartida);
-    jogoPartidas.remove(jogoPartida);
+    jogoPartidas.remove(jogoPartida.getId(), jogoPartida);
 
     // Se a partida que finalizou era uma pública notifica a todos
-    if (jogoPartida.getId() <= Constants.NUMERO_PARTIDAS) {
-      notificarTodos(Constants.TIPOLISTARPARTIDAS, "200", "Partidas publicas", gerarListaPartidas());
-    }
+    difusorLobby.partidaAtualizada(encontrarPartida(jogoPartida.getId()));
   }
 
   // Método para enviar uma linha para o cliente evitando erros de conexão
-  private void enviarLinha(DataOutputStream outToClient, String tipo, String codigo, String mensagem, String valor) {
-    if (outToClient == null)
+  private void enviarLinha(Conexao conexao, String tipo, String codigo, String mensagem, String valor) {
+    if (conexao == null)
       return;
-    try {
-      String spr = Constants.SEPARADOR;
-      String linha = tipo + spr + codigo + spr + mensagem + spr + valor;
-      outToClient.writeBytes(linha + "\n");
-      outToClient.flush();
-    } catch (IOException e) {
-      // Iremos ignorar, cliente pode ter fechado a conexão
-    }
+    conexao.enviarLinha(tipo, codigo, mensagem, valor);
   }
 
   // Método para gerar a lista de jogadores conectados
-  private String gerarListaJogadores() {
+  String gerarListaJogadores() {
     StringBuilder jogadoresServidor = new StringBuilder();
-    List<Cliente> clientesSnapshot;
-
-    synchronized (listaCliente) {
-      clientesSnapshot = new ArrayList<>(listaCliente.values());
-    }
-
-    Iterator<Cliente> it = clientesSnapshot.iterator();
-    while (it.hasNext()) {
-      Cliente cliente = it.next();
+    for (Cliente cliente : listaCliente.retrato().getClientes()) {
       if (jogadoresServidor.isEmpty()) {
         jogadoresServidor.append("nome:" + cliente.getNome());
         continue;
@@ -382,17 +425,14 @@ public class GameManager {
   }
 
   // Método para gerar a lista de partidas públicas
-  private String gerarListaPartidas() {
+  String gerarListaPartidas() {
     StringBuilder partidasServidor = new StringBuilder();
-    List<Partida> partidasSnapshot;
-
-    synchronized (partidas) {
-      partidasSnapshot = new ArrayList<>(partidas);
-    }
-
-    Iterator<Partida> it = partidasSnapshot.iterator();
-    while (it.hasNext()) {
-      Partida partida = it.next();
+    // As partidas públicas têm ids de 1 a NUMERO_PARTIDAS, percorre na ordem
+    for (int id = 1; id <= Constants.NUMERO_PARTIDAS; id++) {
+      Partida partida = partidas.get(id);
+      if (partida == null) {
+        continue;
+      }
       if (partidasServidor.isEmpty()) {
         partidasServidor.append(partida.getInfo());
         continue;
@@ -407,27 +447,21 @@ public class GameManager {
   // MÉTODOS PARA AÇÕES DOS CLIENTES
   //
 
-  public void cadastrarCliente(Map<String, Cliente> listaCliente, String nomeCliente, Socket connectionSocket,
+  public void cadastrarCliente(RegistroClientes listaCliente, String nomeCliente, Conexao conexao,
       String tipo) {
-    try {
-      DataOutputStream outToClient = new DataOutputStream(connectionSocket.getOutputStream());
-      if (nomeCliente.contains(Constants.SEPARADORCLIENTE) || nomeCliente.contains(Constants.SEPARADOR)
-          || nomeCliente.contains(" ") || nomeCliente.contains(Constants.SEPARADORATRIBUTO)
-          || nomeCliente.contains(Constants.SEPARADORITEM) || !nomeCliente.matches("\\A\\p{ASCII}*\\z")) {
-        enviarLinha(outToClient, tipo, "400", "Nome de cliente nao pode conter: " + Constants.SEPARADORCLIENTE
-            + " " + Constants.SEPARADOR + " " + Constants.SEPARADORATRIBUTO + " " + Constants.SEPARADORITEM
-            + " ou espacos em brancos ou caracteres especiais", "campo:nomeCliente");
-        return;
-      }
-      if (nomeCliente.length() > Constants.TAMANHOMAXNOMECLIENTE) {
-        enviarLinha(outToClient, tipo, "400",
-            "Nome de cliente nao pode ter mais que " + Constants.TAMANHOMAXNOMECLIENTE + " caracteres",
-            "campo:nomeCliente");
-        return;
-      }
-    } catch (IOException e) {
-      // Iremos ignorar
-
+    if (nomeCliente.contains(Constants.SEPARADORCLIENTE) || nomeCliente.contains(Constants.SEPARADOR)
+        || nomeCliente.contains(" ") || nomeCliente.contains(Constants.SEPARADORATRIBUTO)
+        || nomeCliente.contains(Constants.SEPARADORITEM) || !nomeCliente.matches("\\A\\p{ASCII}*\\z")) {
+      enviarLinha(conexao, tipo, "400", "Nome de cliente nao pode conter: " + Constants.SEPARADORCLIENTE
+          + " " + Constants.SEPARADOR + " " + Constants.SEPARADORATRIBUTO + " " + Constants.SEPARADORITEM
+          + " ou espacos em brancos ou caracteres especiais", "campo:nomeCliente");
+      return;
+    }
+    if (nomeCliente.length() > Constants.TAMANHOMAXNOMECLIENTE) {
+      enviarLinha(conexao, tipo, "400",
+          "Nome de cliente nao pode ter mais que " + Constants.TAMANHOMAXNOMECLIENTE + " caracteres",
+          "campo:nomeCliente");
+      return;
     }
 
     // Criando um token para o cliente, o cliente receberá esse token e deve
@@ -441,7 +475,7 @@ public class GameManager {
       tokenCliente = UUID.randomUUID().toString();
     }
 
-    Cliente novoCliente = new Cliente(nomeCliente, tokenCliente, connectionSocket);
+    Cliente novoCliente = new Cliente(nomeCliente, tokenCliente, conexao);
     // Tenta adicionar o cliente na lista, esse método retorna o item anterior
     // daquela chave (nomecliente), ou seja, se não existir item com aquela chave,
     // retorna null
@@ -456,21 +490,34 @@ public class GameManager {
       novoCliente.enviarLinha(tipo, "409", "Um cliente com esse nome ja existe", "");
     } else {
       System.out.println("Cadastrando cliente: " + nomeCliente + " com token: " + tokenCliente);
+      // A conexão fica ligada ao cliente, os próximos comandos enviados por ela
+      // podem omitir o nome e o token
+      if (conexao != null) {
+        conexao.setSessao(novoCliente);
+      }
       novoCliente.enviarLinha(tipo, "201", "Cadastrado com sucesso", "token:" + tokenCliente);
       // Inicia keepalive do cliente
-      keepAliveCliente(novoCliente, tipo);
+      iniciarKeepAlive(novoCliente);
+      canalLobby.inscrever(novoCliente);
 
-      notificarTodos(Constants.TIPOLISTARJOGADORES, "200", "Jogadores conectados",
-          gerarListaJogadores());
+      difusorLobby.jogadorEntrou(novoCliente);
     }
   }
 
-  public void listarPartidasCliente(DataOutputStream outToClient, String tipo) {
-    enviarLinha(outToClient, tipo, "200", "Partidas publicas", gerarListaPartidas());
+  public void listarPartidasCliente(Conexao conexao, String tipo) {
+    enviarLinha(conexao, tipo, "200", "Partidas publicas", gerarListaPartidas());
   }
 
-  public void listarJogadoresCliente(DataOutputStream outToClient, String tipo) {
-    enviarLinha(outToClient, tipo, "200", "Jogadores conectados", gerarListaJogadores());
+  public void listarJogadoresCliente(Conexao conexao, String tipo) {
+    enviarLinha(conexao, tipo, "200", "Jogadores conectados", gerarListaJogadores());
+  }
+
+  // Passa o cliente para o lobby incremental e envia o estado completo do lobby
+  // com a versão atual, a partir dela o cliente aplica os eventos
+  // Também é usado pelo cliente para pedir a lista completa de novo quando
+  // perceber que pulou uma versão
+  public void deltaLobbyCliente(Cliente cliente, String tipo) {
+    difusorLobby.enviarEstadoCompleto(cliente, tipo);
   }
 
   public void entrarPartidaCliente(Cliente cliente, int idPartida, String tipo) {
@@ -501,8 +548,7 @@ public class GameManager {
 
     // Se o cliente já estava em alguma partida
     if (idPartidaCliente != -1) {
-      JogoPartida partidaAndamento = encontrarPartidaAndamento(idPartidaCliente);
-      if (partidaAndamento != null) {
+      if (cliente.getJogoPartida() != null) {
         cliente.enviarLinha(tipo, "403", "Nao e possivel sair de uma partida em andamento", "");
         return;
       }
@@ -511,6 +557,7 @@ public class GameManager {
         // Remove o cliente da partida anterior
         partidaAnterior.removerCliente(cliente);
         System.out.println("Cliente " + nomeCliente + " saiu da partida " + idPartidaCliente);
+        difusorLobby.partidaAtualizada(partidaAnterior);
       }
     }
 
@@ -525,25 +572,23 @@ public class GameManager {
     // Tenta iniciar a partida
     tentarIniciarPartida(partidaEscolhida);
 
-    notificarTodos(Constants.TIPOLISTARPARTIDAS, "200", "Partidas publicas", gerarListaPartidas());
+    difusorLobby.partidaAtualizada(partidaEscolhida);
   }
 
-  public void desafiarCliente(Cliente clienteDesafiante, Cliente clienteDesafiado, String tipo) {
+  // tamanhoTabuleiro é o tamanho do tabuleiro da partida se o desafio for aceito
+  public void desafiarCliente(Cliente clienteDesafiante, Cliente clienteDesafiado, int tamanhoTabuleiro,
+      String tipo) {
     String nomeDesafiante = clienteDesafiante.getNome();
     String nomeDesafiado = clienteDesafiado.getNome();
 
     // Verifica se o desafiante está em uma partida em andamento
-    int idPartidaDesafiante = clienteDesafiante.getIdPartida();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(idPartidaDesafiante);
-    if (partidaAndamento != null) {
+    if (clienteDesafiante.getJogoPartida() != null) {
       clienteDesafiante.enviarLinha(tipo, "403", "Nao e possivel desafiar durante uma partida em andamento", "");
       return;
     }
 
     // Verifica se o desafiado está em uma partida em andamento
-    int idPartidaDesafiado = clienteDesafiado.getIdPartida();
-    partidaAndamento = encontrarPartidaAndamento(idPartidaDesafiado);
-    if (partidaAndamento != null) {
+    if (clienteDesafiado.getJogoPartida() != null) {
       clienteDesafiante.enviarLinha(tipo, "403", "O jogador desafiado esta em uma partida em andamento", "");
       return;
     }
@@ -551,8 +596,10 @@ public class GameManager {
     // Se o destinatario não desafiou o remetente, então vamos apenas enviar o nosso
     // desafio para ele
     if (!nomeDesafiante.equals(clienteDesafiado.getJogadorDesafiado())) {
-      notificarJogadorPartida(clienteDesafiado, tipo, "200", "Desafio recebido", "desafiante:" + nomeDesafiante);
+      notificarJogadorPartida(clienteDesafiado, tipo, "200", "Desafio recebido",
+          "desafiante:" + nomeDesafiante + Constants.SEPARADORATRIBUTO + "tamanho:" + tamanhoTabuleiro);
 
+      clienteDesafiante.setTamanhoDesafio(tamanhoTabuleiro);
       clienteDesafiante.setJogadorDesafiado(nomeDesafiado);
 
       clienteDesafiante.enviarLinha(tipo, "201", "Desafio enviado com sucesso", "desafiado:" + nomeDesafiado);
@@ -573,16 +620,12 @@ public class GameManager {
     }
 
     // Verifica se o desafiante está em uma partida em andamento
-    int idPartidaDesafiante = clienteDesafiado.getIdPartida();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(idPartidaDesafiante);
-    if (partidaAndamento != null) {
+    if (clienteDesafiado.getJogoPartida() != null) {
       clienteDesafiado.enviarLinha(tipo, "403", "Nao e possivel aceitar desafio durante uma partida em andamento", "");
       return;
     }
     // Verifica se o desafiado está em uma partida em andamento
-    int idPartidaDesafiado = clienteDesafiante.getIdPartida();
-    partidaAndamento = encontrarPartidaAndamento(idPartidaDesafiado);
-    if (partidaAndamento != null) {
+    if (clienteDesafiante.getJogoPartida() != null) {
       clienteDesafiado.enviarLinha(tipo, "403", "Nao e possivel aceitar desafio de um jogador em partida em andamento",
           "");
       return;
@@ -599,6 +642,8 @@ public class GameManager {
     clientes.add(clienteDesafiante);
 
     int idPartida = proximoIdAutoIncrement();
+    // O tabuleiro é o pedido por quem desafiou
+    int tamanhoTabuleiro = clienteDesafiante.getTamanhoDesafio();
 
     // Garante que não estão em nenhuma partida
     sairPartida(clienteDesafiado, false, tipo);
@@ -607,9 +652,9 @@ public class GameManager {
     clienteDesafiado.setIdPartida(idPartida);
     clienteDesafiante.setIdPartida(idPartida);
 
-    JogoPartida novaPartida = new JogoPartida(idPartida, clientes, null);
+    JogoPartida novaPartida = new JogoPartida(idPartida, clientes, null, tamanhoTabuleiro);
 
-    iniciarJogoPartida(novaPartida);
+    iniciarJogoPartida(novaPartida, clientes);
   }
 
   public void recusarDesafioCliente(Cliente clienteDesafiado, Cliente clienteDesafiante, String tipo) {
@@ -639,23 +684,15 @@ public class GameManager {
 
   public void chatPartidaCliente(Cliente cliente, String mensagem, String tipo) {
     String nomeCliente = cliente.getNome();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
 
-    // Percorre todos os clientes da partida e envia a mensagem
-    List<Jogador> jogadoresSnapshot;
-    synchronized (partidaAndamento) {
-      jogadoresSnapshot = new ArrayList<>(partidaAndamento.getTodosJogadores());
-    }
-    Iterator<Jogador> it = jogadoresSnapshot.iterator();
-    while (it.hasNext()) {
-      Jogador jogador = it.next();
-      notificarJogadorPartida(jogador, tipo, "200", "Chat da partida",
-          "nome:" + nomeCliente + Constants.SEPARADORATRIBUTO + "mensagem:" + mensagem);
-    }
+    // Publica direto no canal da partida, não precisa passar pela caixa
+    String valor = "nome:" + nomeCliente + Constants.SEPARADORATRIBUTO + "mensagem:" + mensagem;
+    notificarJogadoresPartida(partidaAndamento, tipo, "200", "Chat da partida", valor);
   }
 
   public void chatJogadorCliente(Cliente cliente, String nomeDestinatario, String mensagem, String tipo) {
@@ -674,13 +711,24 @@ public class GameManager {
     cliente.enviarLinha(tipo, "200", "Chat privado", valor);
   }
 
+  // Entrega a tarefa à caixa da partida, se ela vier de um comando a latência
+  // dele só termina quando a tarefa terminar (ver Metricas.acompanhar)
+  private void executarNaCaixa(JogoPartida jogoPartida, Runnable tarefa) {
+    jogoPartida.getCaixa().execute(metricas.acompanhar(tarefa));
+  }
+
+  // Os comandos da partida são validados e executados pela caixa da partida, na
+  // ordem em que chegaram
   public void prontoPartidaCliente(Cliente cliente, String tipo) {
-    int idPartida = cliente.getIdPartida();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(idPartida);
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
+    executarNaCaixa(partidaAndamento, () -> prontoPartida(partidaAndamento, cliente, tipo));
+  }
+
+  private void prontoPartida(JogoPartida partidaAndamento, Cliente cliente, String tipo) {
     partidaAndamento.definirJogadorPronto(cliente.getNome());
     cliente.enviarLinha(tipo, "200", "Jogador marcado como pronto", "");
     // Se todos jogadores estiverem prontos, notifica e avança o turno (define o
@@ -692,115 +740,122 @@ public class GameManager {
   }
 
   public void moverCliente(Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento, String tipo) {
-    String nomeCliente = cliente.getNome();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
+    executarNaCaixa(partidaAndamento, () -> mover(partidaAndamento, cliente, posicaoX, posicaoY, deslocamento, tipo));
+  }
 
-    synchronized (partidaAndamento) {
-      if (!partidaAndamento.todosJogadoresProntos()) {
-        cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
-      } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
-        cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
-      } else if (!partidaAndamento.movimento(nomeCliente, posicaoX, posicaoY, deslocamento)) {
-        cliente.enviarLinha(tipo, "400", "Movimento invalido",
-            "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
-      } else {
-        if (deslocamento) {
-          Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
-          posicaoX = jogador.getPosicao().getX();
-          posicaoY = jogador.getPosicao().getY();
-        }
-        cliente.enviarLinha(tipo, "200", "Movimento realizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
-        // Evita que o timer dispare durante a troca de turno
-        cancelarTimerTurno(partidaAndamento);
-        proximoTurnoPartida(partidaAndamento);
+  private void mover(JogoPartida partidaAndamento, Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento,
+      String tipo) {
+    String nomeCliente = cliente.getNome();
+    if (!partidaAndamento.todosJogadoresProntos()) {
+      cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
+    } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
+      cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
+    } else if (!partidaAndamento.movimento(nomeCliente, posicaoX, posicaoY, deslocamento)) {
+      cliente.enviarLinha(tipo, "400", "Movimento invalido",
+          "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
+    } else {
+      if (deslocamento) {
+        Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
+        posicaoX = jogador.getPosicao().getX();
+        posicaoY = jogador.getPosicao().getY();
       }
+      cliente.enviarLinha(tipo, "200", "Movimento realizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
+      // Evita que o timer dispare durante a troca de turno
+      cancelarTimerTurno(partidaAndamento);
+      proximoTurnoPartida(partidaAndamento);
     }
   }
 
   public void atacarCliente(Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento, String tipo) {
-    String nomeCliente = cliente.getNome();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
+    executarNaCaixa(partidaAndamento, () -> atacar(partidaAndamento, cliente, posicaoX, posicaoY, deslocamento, tipo));
+  }
 
-    synchronized (partidaAndamento) {
-      if (!partidaAndamento.todosJogadoresProntos()) {
-        cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
-      } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
-        cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
-      } else if (!partidaAndamento.ataque(nomeCliente, posicaoX, posicaoY, deslocamento)) {
-        cliente.enviarLinha(tipo, "400", "Ataque invalido",
-            "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
-      } else {
-        if (deslocamento) {
-          Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
-          posicaoX = jogador.getPosicao().getX();
-          posicaoY = jogador.getPosicao().getY();
-        }
-        cliente.enviarLinha(tipo, "200", "Ataque realizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
-        // Avança para o próximo turno
-        cancelarTimerTurno(partidaAndamento);
-        proximoTurnoPartida(partidaAndamento);
+  private void atacar(JogoPartida partidaAndamento, Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento,
+      String tipo) {
+    String nomeCliente = cliente.getNome();
+    if (!partidaAndamento.todosJogadoresProntos()) {
+      cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
+    } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
+      cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
+    } else if (!partidaAndamento.ataque(nomeCliente, posicaoX, posicaoY, deslocamento)) {
+      cliente.enviarLinha(tipo, "400", "Ataque invalido",
+          "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
+    } else {
+      if (deslocamento) {
+        Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
+        posicaoX = jogador.getPosicao().getX();
+        posicaoY = jogador.getPosicao().getY();
       }
+      cliente.enviarLinha(tipo, "200", "Ataque realizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
+      // Avança para o próximo turno
+      cancelarTimerTurno(partidaAndamento);
+      proximoTurnoPartida(partidaAndamento);
     }
   }
 
   public void sonarCliente(Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento, String tipo) {
-    String nomeCliente = cliente.getNome();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
+    executarNaCaixa(partidaAndamento, () -> sonar(partidaAndamento, cliente, posicaoX, posicaoY, deslocamento, tipo));
+  }
 
-    synchronized (partidaAndamento) {
-      if (!partidaAndamento.todosJogadoresProntos()) {
-        cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
-      } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
-        cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
-      } else if (!partidaAndamento.dispositivoProximidade(nomeCliente, posicaoX, posicaoY, deslocamento)) {
-        cliente.enviarLinha(tipo, "400", "Sonar invalido",
-            "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
-      } else {
-
-        if (deslocamento) {
-          Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
-          posicaoX = jogador.getPosicao().getX();
-          posicaoY = jogador.getPosicao().getY();
-        }
-        cliente.enviarLinha(tipo, "200", "Sonar utilizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
-        // Avança para o próximo turno
-        cancelarTimerTurno(partidaAndamento);
-        proximoTurnoPartida(partidaAndamento);
+  private void sonar(JogoPartida partidaAndamento, Cliente cliente, int posicaoX, int posicaoY, boolean deslocamento,
+      String tipo) {
+    String nomeCliente = cliente.getNome();
+    if (!partidaAndamento.todosJogadoresProntos()) {
+      cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
+    } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
+      cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
+    } else if (!partidaAndamento.dispositivoProximidade(nomeCliente, posicaoX, posicaoY, deslocamento)) {
+      cliente.enviarLinha(tipo, "400", "Sonar invalido",
+          "campo:[posicaoX" + Constants.SEPARADORATRIBUTO + "posicaoY]");
+    } else {
+
+      if (deslocamento) {
+        Jogador jogador = partidaAndamento.buscarJogadorPorNome(nomeCliente);
+        posicaoX = jogador.getPosicao().getX();
+        posicaoY = jogador.getPosicao().getY();
       }
+      cliente.enviarLinha(tipo, "200", "Sonar utilizado com sucesso", "x:" + posicaoX + ",y:" + posicaoY);
+      // Avança para o próximo turno
+      cancelarTimerTurno(partidaAndamento);
+      proximoTurnoPartida(partidaAndamento);
     }
   }
 
   public void passarCliente(Cliente cliente, String tipo) {
-    String nomeCliente = cliente.getNome();
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento == null) {
       cliente.enviarLinha(tipo, "404", "Cliente nao esta em uma partida em andamento", "");
       return;
     }
+    executarNaCaixa(partidaAndamento, () -> passar(partidaAndamento, cliente, tipo));
+  }
 
-    synchronized (partidaAndamento) {
-      if (!partidaAndamento.todosJogadoresProntos()) {
-        cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
-      } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
-        cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
-      } else {
-        cliente.enviarLinha(tipo, "200", "Turno passado com sucesso", "");
-        // Avança para o próximo turno
-        cancelarTimerTurno(partidaAndamento);
-        proximoTurnoPartida(partidaAndamento);
-      }
+  private void passar(JogoPartida partidaAndamento, Cliente cliente, String tipo) {
+    String nomeCliente = cliente.getNome();
+    if (!partidaAndamento.todosJogadoresProntos()) {
+      cliente.enviarLinha(tipo, "202", "Jogadores ainda nao prontos", "");
+    } else if (!nomeCliente.equals(partidaAndamento.getJogadorTurno())) {
+      cliente.enviarLinha(tipo, "403", "Nao e o turno do jogador", "");
+    } else {
+      cliente.enviarLinha(tipo, "200", "Turno passado com sucesso", "");
+      // Avança para o próximo turno
+      cancelarTimerTurno(partidaAndamento);
+      proximoTurnoPartida(partidaAndamento);
     }
   }
 
@@ -809,20 +864,22 @@ public class GameManager {
     cliente.setJogadorDesafiado(null);
 
     // Caso o cliente esteja em uma partida em andamento
-    JogoPartida partidaAndamento = encontrarPartidaAndamento(cliente.getIdPartida());
+    // O cliente deixa de apontar para a partida na hora (os próximos comandos
+    // dele não vão mais para ela) e o jogador é removido pela caixa da partida
+    JogoPartida partidaAndamento = cliente.getJogoPartida();
     if (partidaAndamento != null) {
-      boolean avancarTurno = false;
-      synchronized (partidaAndamento) {
+      cliente.setIdPartida(-1);
+      cliente.setJogoPartida(null);
+      voltarAoLobby(cliente);
+      executarNaCaixa(partidaAndamento, () -> {
         String turno = partidaAndamento.getJogadorTurno();
-        partidaAndamento.removerJogador(partidaAndamento.buscarJogadorPorNome(nomeCliente));
-        avancarTurno = turno != null && turno.equals(nomeCliente);
-        cliente.setIdPartida(-1);
-      }
-      if (enviarNotificacao)
-        cliente.enviarLinha(tipo, "200", "Saiu da partida em andamento com sucesso", "");
-      if (avancarTurno) {
-        proximoTurnoPartida(partidaAndamento);
-      }
+        partidaAndamento.removerJogador(partidaAndamento.buscarJogadorPartida(nomeCliente));
+        if (enviarNotificacao)
+          cliente.enviarLinha(tipo, "200", "Saiu da partida em andamento com sucesso", "");
+        if (turno != null && turno.equals(nomeCliente)) {
+          proximoTurnoPartida(partidaAndamento);
+        }
+      });
       return;
     }
 
@@ -834,6 +891,7 @@ public class GameManager {
       cliente.setIdPartida(-1);
       if (enviarNotificacao)
         cliente.enviarLinha(tipo, "200", "Saiu da partida com sucesso", "");
+      difusorLobby.partidaAtualizada(partida);
     } else if (enviarNotificacao) {
       cliente.enviarLinha(tipo, "404", "Nao esta em partida", "");
     }
@@ -850,22 +908,22 @@ public class GameManager {
     sairPartida(cliente, false, tipo);
 
     // Remove o cliente da lista de clientes
-    listaCliente.remove(nomeCliente);
+    listaCliente.remover(cliente);
+    cliente.setRemovido(true);
+    canalLobby.desinscrever(cliente);
     // Cancela o keepalive deste cliente
     cancelarKeepAlive(cliente);
     cliente.enviarLinha(tipo, codigo, "Desconectado com sucesso", "nomeCliente:" + nomeCliente);
     // Notificando todos sobre a saída do cliente
-    notificarTodos(Constants.TIPOLISTARJOGADORES, "200", "Jogadores conectados",
-        gerarListaJogadores());
-
-    // Fecha o socket deste cliente
-    try {
-      Socket connectionSocket = cliente.getConnectionSocket();
-      if (connectionSocket != null && !connectionSocket.isClosed()) {
-        connectionSocket.close();
+    difusorLobby.jogadorSaiu(cliente);
+
+    // Fecha a conexão deste cliente
+    Conexao conexao = cliente.getConexao();
+    if (conexao != null) {
+      conexao.setSessao(null);
+      if (!conexao.isFechada()) {
+        conexao.fechar();
       }
-    } catch (IOException e) {
-      // ignora
     }
   }
 
@@ -879,34 +937,31 @@ public class GameManager {
   private void agendarTimerTurno(JogoPartida jogoPartida) {
     int partidaId = jogoPartida.getId();
     // Cancela o anterior, se houver
-    ScheduledFuture<?> anterior = turnTimers.remove(partidaId);
+    RodaTemporizacao.Temporizador anterior = turnTimers.remove(partidaId);
     if (anterior != null) {
-      anterior.cancel(false);
+      anterior.cancelar();
     }
     final int turnoAgendado = jogoPartida.getNumTurno();
-    ScheduledFuture<?> futuro = turnScheduler.schedule(() -> {
-      try {
-        // Verifica se ainda estamos no mesmo turno e captura o jogador do turno
-        Jogador jogadorTurnoAtual;
-        String nomeJogadorTurno;
-        synchronized (jogoPartida) {
-          if (jogoPartida.getNumTurno() != turnoAgendado) {
-            return; // já avançou por ação do jogador
-          }
-          nomeJogadorTurno = jogoPartida.getJogadorTurno();
-          jogadorTurnoAtual = jogoPartida.buscarJogadorPorNome(nomeJogadorTurno);
-        }
-        if (jogadorTurnoAtual != null) {
-          notificarJogadorPartida(jogadorTurnoAtual, Constants.TIPOTURNOEXPIROU, "408", "Seu turno expirou",
-              "nome:" + nomeJogadorTurno);
-        }
-        // Força avanço do turno (equivale a PASSAR)
-        proximoTurnoPartida(jogoPartida);
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    }, Constants.TEMPO_TURNO, TimeUnit.SECONDS);
-    turnTimers.put(partidaId, futuro);
+    // O timer só entrega a expiração na caixa da partida, quem trata é ela
+    RodaTemporizacao.Temporizador temporizador = rodaTemporizacao.agendar(
+        () -> executarNaCaixa(jogoPartida, () -> expirarTurno(jogoPartida, turnoAgendado)),
+        TimeUnit.SECONDS.toMillis(Constants.TEMPO_TURNO));
+    turnTimers.put(partidaId, temporizador);
+  }
+
+  private void expirarTurno(JogoPartida jogoPartida, int turnoAgendado) {
+    // Verifica se ainda estamos no mesmo turno
+    if (jogoPartida.getNumTurno() != turnoAgendado) {
+      return; // já avançou por ação do jogador
+    }
+    String nomeJogadorTurno = jogoPartida.getJogadorTurno();
+    Jogador jogadorTurnoAtual = jogoPartida.buscarJogadorPorNome(nomeJogadorTurno);
+    if (jogadorTurnoAtual != null) {
+      notificarJogadorPartida(jogadorTurnoAtual, Constants.TIPOTURNOEXPIROU, "408", "Seu turno expirou",
+          "nome:" + nomeJogadorTurno);
+    }
+    // Força avanço do turno (equivale a PASSAR)
+    proximoTurnoPartida(jogoPartida);
   }
 
   // Método criado pelo Agente Copilot do VSCode ao pedir como se
@@ -914,40 +969,26 @@ public class GameManager {
   // Cancela o timer do turno da partida, se existir
   private void cancelarTimerTurno(JogoPartida jogoPartida) {
     int partidaId = jogoPartida.getId();
-    ScheduledFuture<?> futuro = turnTimers.remove(partidaId);
-    if (futuro != null) {
-      futuro.cancel(false);
+    RodaTemporizacao.Temporizador temporizador = turnTimers.remove(partidaId);
+    if (temporizador != null) {
+      temporizador.cancelar();
     }
   }
 
+  // Chamado a cada comando validado do cliente, só registra a atividade
   public void keepAliveCliente(Cliente cliente, String tipo) {
     if (!Constants.KEEPALIVE)
       return;
     if (cliente == null)
       return;
-    String chave = cliente.getNome();
-    // Cancela agendamento anterior, se houver
-    ScheduledFuture<?> anterior = keepAliveTimers.remove(chave);
-    if (anterior != null) {
-      anterior.cancel(false);
-    }
-    int tempo = Constants.TEMPO_KEEPALIVE;
-    if ("teste".equals(cliente.getNome()) || "teste2".equals(cliente.getNome())) {
-      tempo = 600; // tempo maior para cliente de teste
-    }
-    // Agenda novo timeout
-    ScheduledFuture<?> futuro = keepAliveScheduler.schedule(() -> {
-      try {
-        // Tempo esgotado: desconecta o cliente
-        sair(cliente, "408", Constants.TIPODESCONECTADO);
-      } catch (Exception e) {
-        e.printStackTrace();
-      } finally {
-        // Remove o handle para evitar vazamento
-        keepAliveTimers.remove(chave);
-      }
-    }, tempo, TimeUnit.SECONDS);
-    keepAliveTimers.put(chave, futuro);
+    cliente.registrarAtividade();
+  }
+
+  private void iniciarKeepAlive(Cliente cliente) {
+    if (!Constants.KEEPALIVE)
+      return;
+    cliente.registrarAtividade();
+    clientesKeepAlive.put(cliente.getNome(), cliente);
   }
 
   private void cancelarKeepAlive(Cliente cliente) {
@@ -955,10 +996,59 @@ public class GameManager {
       return;
     if (cliente == null)
       return;
-    String chave = cliente.getNome();
-    ScheduledFuture<?> fut = keepAliveTimers.remove(chave);
-    if (fut != null) {
-      fut.cancel(false);
+    clientesKeepAlive.remove(cliente.getNome(), cliente);
+  }
+
+  private long tempoKeepAliveNanos(Cliente cliente) {
+    int tempo = Constants.TEMPO_KEEPALIVE;
+    if ("teste".equals(cliente.getNome()) || "teste2".equals(cliente.getNome())) {
+      tempo = 600; // tempo maior para cliente de teste
     }
+    return TimeUnit.SECONDS.toNanos(tempo);
+  }
+
+  private boolean inativo(Cliente cliente, long agora) {
+    return agora - cliente.getUltimaAtividade() > tempoKeepAliveNanos(cliente);
+  }
+
+  // Desconecta os clientes sem atividade há mais de TEMPO_KEEPALIVE
+  // A passada pelos clientes só lê a última atividade de cada um (sem trava e
+  // sem criar nada), a lista só é criada quando alguém expirou
+  private void varrerKeepAlives() {
+    long agora = System.nanoTime();
+    List<Cliente> expirados = null;
+    for (Cliente cliente : clientesKeepAlive.values()) {
+      if (inativo(cliente, agora)) {
+        if (expirados == null) {
+          expirados = new ArrayList<>();
+        }
+        expirados.add(cliente);
+      }
+    }
+    if (expirados == null) {
+      return;
+    }
+    Conexao.iniciarLote();
+    try {
+      for (Cliente cliente : expirados) {
+        // Pode ter enviado um comando ou saído depois da passada
+        if (cliente.isRemovido() || !inativo(cliente, System.nanoTime())) {
+          continue;
+        }
+        try {
+          // Tempo esgotado: desconecta o cliente
+          sair(cliente, "408", Constants.TIPODESCONECTADO);
+        } catch (Exception e) {
+          // Uma exceção aqui cancelaria as próximas varreduras
+          e.printStackTrace();
+        }
+      }
+    } finally {
+      Conexao.finalizarLote();
+    }
+  }
+
+  public RodaTemporizacao getRodaTemporizacao() {
+    return this.rodaTemporizacao;
   }
 }
@@ -0,0 +1,179 @@
+package server;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+// Linha recebida de um cliente, guardada em bytes e separada em campos no
+// próprio array: cada campo é só uma posição de início e fim, Strings só são
+// criadas quando o comando precisa do texto (nome, token, mensagem)
+// Cada conexão reaproveita a mesma LinhaComando para todas as linhas
+// Segue as mesmas regras do trim() + split(" ") usados antes: espaços nas
+// pontas são ignorados, cada espaço separa um campo (dois espaços seguidos
+// geram um campo vazio) e campos vazios no fim são descartados
+public class LinhaComando {
+  // Mesmo charset usado pelo InputStreamReader antes
+  private static final Charset CHARSET = Charset.defaultCharset();
+  // Limite para uma linha sem \n, evita que um cliente consuma toda a memória
+  private static final int TAMANHO_MAX_LINHA = 64 * 1024;
+
+  private byte[] dados = new byte[256];
+  private int tamanho = 0;
+  // Fim da linha sem os espaços do final
+  private int fimLinha = 0;
+  private int[] inicios = new int[16];
+  private int[] fins = new int[16];
+  private int numCampos = 0;
+
+  // Junta os bytes de origem[pos, limite) na linha até encontrar um \n
+  // Retorna a posição seguinte ao \n, com a linha completa e separada em campos,
+  // ou -1 se todos os bytes foram usados e a linha ainda não terminou
+  public int consumir(byte[] origem, int pos, int limite) throws IOException {
+    int fim = pos;
+    while (fim < limite && origem[fim] != '\n') {
+      fim++;
+    }
+    int quantidade = fim - pos;
+    if (tamanho + quantidade > dados.length) {
+      if (tamanho + quantidade > TAMANHO_MAX_LINHA) {
+        throw new IOException("Linha maior que " + TAMANHO_MAX_LINHA + " bytes");
+      }
+      dados = Arrays.copyOf(dados, Math.min(Math.max(dados.length * 2, tamanho + quantidade), TAMANHO_MAX_LINHA));
+    }
+    System.arraycopy(origem, pos, dados, tamanho, quantidade);
+    tamanho += quantidade;
+    if (fim == limite) {
+      return -1;
+    }
+    separarCampos();
+    return fim + 1;
+  }
+
+  // Termina a linha com o que já foi recebido, usado quando a conexão acaba sem
+  // \n no final (o readLine fazia o mesmo). Retorna false se não há nada
+  public boolean terminar() {
+    if (tamanho == 0) {
+      return false;
+    }
+    separarCampos();
+    return true;
+  }
+
+  // Prepara para receber a próxima linha
+  public void limpar() {
+    tamanho = 0;
+    fimLinha = 0;
+    numCampos = 0;
+  }
+
+  private void separarCampos() {
+    int inicio = 0;
+    int fim = tamanho;
+    while (inicio < fim && (dados[inicio] & 0xff) <= ' ') {
+      inicio++;
+    }
+    while (fim > inicio && (dados[fim - 1] & 0xff) <= ' ') {
+      fim--;
+    }
+    fimLinha = fim;
+    numCampos = 0;
+    int inicioCampo = inicio;
+    for (int i = inicio; i <= fim; i++) {
+      if (i == fim || dados[i] == ' ') {
+        adicionarCampo(inicioCampo, i);
+        inicioCampo = i + 1;
+      }
+    }
+    // O split descarta os campos vazios do fim, mas sempre sobra um
+    while (numCampos > 1 && inicios[numCampos - 1] == fins[numCampos - 1]) {
+      numCampos--;
+    }
+  }
+
+  private void adicionarCampo(int inicio, int fim) {
+    if (numCampos == inicios.length) {
+      inicios = Arrays.copyOf(inicios, inicios.length * 2);
+      fins = Arrays.copyOf(fins, fins.length * 2);
+    }
+    inicios[numCampos] = inicio;
+    fins[numCampos] = fim;
+    numCampos++;
+  }
+
+  public int getNumCampos() {
+    return this.numCampos;
+  }
+
+  // true se o campo não foi informado ou está vazio
+  public boolean campoVazio(int indice) {
+    return indice >= numCampos || inicios[indice] == fins[indice];
+  }
+
+  // Busca o comando escrito no primeiro campo
+  public Comando comando(ArvoreComandos arvore) {
+    return arvore.buscar(dados, inicios[0], fins[0]);
+  }
+
+  public String campo(int indice) {
+    return new String(dados, inicios[indice], fins[indice] - inicios[indice], CHARSET);
+  }
+
+  // Texto do campo indicado até o fim da linha, com os espaços originais, usado
+  // nas mensagens de chat
+  public String restoAPartir(int indice) {
+    return new String(dados, inicios[indice], fimLinha - inicios[indice], CHARSET);
+  }
+
+  // Compara o campo com um texto ASCII sem criar uma String
+  public boolean campoIgual(int indice, String texto) {
+    int inicio = inicios[indice];
+    int tamanhoCampo = fins[indice] - inicio;
+    if (tamanhoCampo != texto.length()) {
+      return false;
+    }
+    for (int i = 0; i < tamanhoCampo; i++) {
+      if (dados[inicio + i] != texto.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Converte o campo para inteiro direto dos bytes, aceita as mesmas entradas
+  // que o Integer.parseInt (sinal opcional e dígitos)
+  public int campoInteiro(int indice) {
+    int i = inicios[indice];
+    int fim = fins[indice];
+    boolean negativo = false;
+    if (i < fim && (dados[i] == '-' || dados[i] == '+')) {
+      negativo = dados[i] == '-';
+      i++;
+    }
+    if (i == fim) {
+      throw new NumberFormatException("Campo " + indice + " nao e um numero");
+    }
+    long valor = 0;
+    for (; i < fim; i++) {
+      int digito = dados[i] - '0';
+      if (digito < 0 || digito > 9) {
+        throw new NumberFormatException("Campo " + indice + " nao e um numero");
+      }
+      valor = valor * 10 + digito;
+      if (valor > (long) Integer.MAX_VALUE + 1) {
+        throw new NumberFormatException("Campo " + indice + " fora do intervalo");
+      }
+    }
+    if (negativo) {
+      valor = -valor;
+    }
+    if (valor > Integer.MAX_VALUE) {
+      throw new NumberFormatException("Campo " + indice + " fora do intervalo");
+    }
+    return (int) valor;
+  }
+
+  // A linha completa, usada apenas em logs
+  public String toString() {
+    return new String(dados, 0, tamanho, CHARSET);
+  }
+}
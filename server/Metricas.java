@@ -0,0 +1,207 @@
+package server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Métricas dos comandos processados pelo servidor: um histograma de latência
+// por comando, a quantidade por segundo de cada comando, as respostas com
+// código de erro e a quantidade de destinatários dos broadcasts (Canal e
+// DifusorLobby)
+// A latência vai do recebimento da linha até o fim do trabalho do comando: o
+// fim do lote de envio, ou o fim da última tarefa que ele entregou à caixa de
+// uma partida (MOVER, ATACAR, PASSAR...), ver iniciarComando e acompanhar
+// As respostas são contadas por cliente quando entram na fila de saída dele
+// (ver Conexao.enviarLinha), os broadcasts entram só no histograma deles
+// Registrar um comando ou uma resposta só incrementa contadores, sem criar
+// objetos (só os comandos que entregam tarefas a uma caixa criam a medição
+// compartilhada com elas), então as métricas podem ficar sempre ligadas
+// A cada INTERVALO_RELATORIO_METRICAS segundos um relatório é impresso, só se
+// algum comando chegou no intervalo
+public class Metricas {
+  private static final int[] CODIGOS_ERRO = { 400, 401, 403, 404, 405, 408, 409, 500 };
+  private static final int LIMITE_CODIGOS = 600;
+
+  private final Histograma[] latenciaComandos = new Histograma[Comando.values().length];
+  // Respostas enviadas por código (200, 404, 500...)
+  private final AtomicLongArray respostasPorCodigo = new AtomicLongArray(LIMITE_CODIGOS);
+  private final ScheduledExecutorService relatorioScheduler = Executors.newSingleThreadScheduledExecutor();
+  // Contagens no último relatório, usadas só pela thread do relatório para
+  // calcular a taxa do intervalo
+  private final long[] contagemAnterior = new long[Comando.values().length];
+  private final long[] codigosAnterior = new long[CODIGOS_ERRO.length];
+  private long instanteAnterior = System.nanoTime();
+  // Comando sendo processado em cada thread, veja iniciarComando
+  private final ThreadLocal<ComandoAtual> comandoAtual = ThreadLocal.withInitial(ComandoAtual::new);
+
+  // Comando em processamento numa thread, reaproveitado entre os comandos
+  private static class ComandoAtual {
+    Comando comando;
+    long inicio;
+    // Criada quando o comando entrega a primeira tarefa a uma caixa
+    MedicaoAdiada adiada;
+  }
+
+  // Medição de um comando que só termina quando as tarefas que ele entregou às
+  // caixas terminarem: pendentes conta as tarefas e o próprio comando, quem
+  // chegar a zero registra a latência
+  private static class MedicaoAdiada {
+    final Comando comando;
+    final long inicio;
+    final AtomicInteger pendentes = new AtomicInteger(1);
+
+    MedicaoAdiada(Comando comando, long inicio) {
+      this.comando = comando;
+      this.inicio = inicio;
+    }
+  }
+
+  public Metricas() {
+    for (int i = 0; i < latenciaComandos.length; i++) {
+      latenciaComandos[i] = new Histograma();
+    }
+  }
+
+  // Agenda o relatório periódico
+  public void iniciar() {
+    int intervalo = Constants.INTERVALO_RELATORIO_METRICAS;
+    if (intervalo > 0) {
+      relatorioScheduler.scheduleAtFixedRate(this::imprimirRelatorio, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+  }
+
+  public void registrarComando(Comando comando, long nanos) {
+    latenciaComandos[comando.ordinal()].registrar(nanos);
+  }
+
+  // Começa a medir o comando recebido na thread atual, inicio é o
+  // System.nanoTime do recebimento da linha
+  public void iniciarComando(Comando comando, long inicio) {
+    ComandoAtual atual = comandoAtual.get();
+    atual.comando = comando;
+    atual.inicio = inicio;
+    atual.adiada = null;
+  }
+
+  // Fim do processamento do comando na thread atual, registra a latência se
+  // ele não entregou nenhuma tarefa a uma caixa
+  public void finalizarComando() {
+    ComandoAtual atual = comandoAtual.get();
+    if (atual.comando == null) {
+      return;
+    }
+    if (atual.adiada == null) {
+      registrarComando(atual.comando, System.nanoTime() - atual.inicio);
+    } else {
+      terminar(atual.adiada);
+    }
+    atual.comando = null;
+    atual.adiada = null;
+  }
+
+  // Usado por quem entrega uma tarefa à caixa de uma partida: se a thread
+  // estiver processando um comando, a medição dele só termina quando a tarefa
+  // terminar. Fora de um comando (timers) retorna a própria tarefa
+  public Runnable acompanhar(Runnable tarefa) {
+    ComandoAtual atual = comandoAtual.get();
+    if (atual.comando == null) {
+      return tarefa;
+    }
+    if (atual.adiada == null) {
+      atual.adiada = new MedicaoAdiada(atual.comando, atual.inicio);
+    }
+    MedicaoAdiada medicao = atual.adiada;
+    medicao.pendentes.incrementAndGet();
+    return () -> {
+      try {
+        tarefa.run();
+      } finally {
+        terminar(medicao);
+      }
+    };
+  }
+
+  private void terminar(MedicaoAdiada medicao) {
+    if (medicao.pendentes.decrementAndGet() == 0) {
+      registrarComando(medicao.comando, System.nanoTime() - medicao.inicio);
+    }
+  }
+
+  public Histograma getLatencia(Comando comando) {
+    return latenciaComandos[comando.ordinal()];
+  }
+
+  // Conta a resposta pelo código sem converter a String
+  public void registrarResposta(String codigo) {
+    if (codigo == null || codigo.length() != 3) {
+      return;
+    }
+    int numero = 0;
+    for (int i = 0; i < 3; i++) {
+      int digito = codigo.charAt(i) - '0';
+      if (digito < 0 || digito > 9) {
+        return;
+      }
+      numero = numero * 10 + digito;
+    }
+    if (numero < LIMITE_CODIGOS) {
+      respostasPorCodigo.incrementAndGet(numero);
+    }
+  }
+
+  public long getRespostas(int codigo) {
+    if (codigo < 0 || codigo >= LIMITE_CODIGOS) {
+      return 0;
+    }
+    return respostasPorCodigo.get(codigo);
+  }
+
+  public static int[] getCodigosErro() {
+    return CODIGOS_ERRO.clone();
+  }
+
+  private void imprimirRelatorio() {
+    long agora = System.nanoTime();
+    double segundos = (agora - instanteAnterior) / 1e9;
+    instanteAnterior = agora;
+    boolean houveComandos = false;
+    StringBuilder relatorio = new StringBuilder();
+    relatorio.append(String.format("Comandos nos ultimos %.0fs (latencia em ms desde o inicio: p50 p99 p999 max)\n",
+        segundos));
+    for (Comando comando : Comando.values()) {
+      Histograma latencia = latenciaComandos[comando.ordinal()];
+      long contagem = latencia.getContagem();
+      long intervalo = contagem - contagemAnterior[comando.ordinal()];
+      contagemAnterior[comando.ordinal()] = contagem;
+      if (intervalo == 0) {
+        continue;
+      }
+      houveComandos = true;
+      relatorio.append(String.format("  %s: %d (%.1f/s) %.3f %.3f %.3f %.3f\n", comando, intervalo,
+          intervalo / segundos, latencia.percentil(0.5) / 1e6, latencia.percentil(0.99) / 1e6,
+          latencia.percentil(0.999) / 1e6, latencia.getMaximo() / 1e6));
+    }
+    if (!houveComandos) {
+      return;
+    }
+    StringBuilder erros = new StringBuilder();
+    for (int i = 0; i < CODIGOS_ERRO.length; i++) {
+      long contagem = getRespostas(CODIGOS_ERRO[i]);
+      long intervalo = contagem - codigosAnterior[i];
+      codigosAnterior[i] = contagem;
+      if (intervalo > 0) {
+        erros.append(' ').append(CODIGOS_ERRO[i]).append(':').append(intervalo);
+      }
+    }
+    if (erros.length() > 0) {
+      relatorio.append("  respostas com erro:").append(erros).append('\n');
+    }
+    Histograma destinatarios = Canal.getHistogramaDestinatarios();
+    if (destinatarios.getContagem() > 0) {
+      relatorio.append(String.format("  broadcasts desde o inicio: %d, destinatarios p50 %d p99 %d max %d\n",
+          destinatarios.getContagem(), destinatarios.percentil(0.5), destinatarios.percentil(0.99),
+          destinatarios.getMaximo()));
+    }
+    System.out.print(relatorio);
+  }
+}
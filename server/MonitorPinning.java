@@ -0,0 +1,85 @@
+package server;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jdk.jfr.consumer.*;
+import classes.*;
+
+// Monitor dos eventos de pinning das threads virtuais (quando uma thread
+// virtual bloqueia sem conseguir liberar a thread carregadora, por exemplo
+// dentro de um bloco synchronized)
+// Usa o evento jdk.VirtualThreadPinned do JFR e imprime periodicamente um
+// relatório agrupado pelo ponto do código (server.* ou classes.*) onde ocorreu
+public class MonitorPinning {
+  private static final String EVENTO = "jdk.VirtualThreadPinned";
+
+  private final RecordingStream stream = new RecordingStream();
+  private final ScheduledExecutorService relatorioScheduler = Executors.newSingleThreadScheduledExecutor();
+  // Quantidade e tempo total de pinning por ponto do código, desde o último
+  // relatório
+  private final ConcurrentMap<String, LongAdder> eventosPorLocal = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> nanosPorLocal = new ConcurrentHashMap<>();
+  private final AtomicLong totalEventos = new AtomicLong();
+  private final AtomicLong eventosIntervalo = new AtomicLong();
+
+  public void iniciar() {
+    stream.enable(EVENTO).withStackTrace().withThreshold(Duration.ofMillis(Constants.LIMITE_PINNING_MS));
+    stream.onEvent(EVENTO, this::registrarEvento);
+    stream.startAsync();
+
+    int intervalo = Constants.INTERVALO_RELATORIO_PINNING;
+    relatorioScheduler.scheduleAtFixedRate(this::imprimirRelatorio, intervalo, intervalo, TimeUnit.SECONDS);
+    System.out.println("Monitor de pinning ativo (eventos acima de " + Constants.LIMITE_PINNING_MS
+        + "ms, relatorio a cada " + intervalo + "s)");
+  }
+
+  private void registrarEvento(RecordedEvent evento) {
+    String local = localDoEvento(evento);
+    eventosPorLocal.computeIfAbsent(local, k -> new LongAdder()).increment();
+    nanosPorLocal.computeIfAbsent(local, k -> new LongAdder()).add(evento.getDuration().toNanos());
+    totalEventos.incrementAndGet();
+    eventosIntervalo.incrementAndGet();
+  }
+
+  // Procura na pilha o primeiro método do próprio jogo, que é o que nos interessa
+  // corrigir, se não houver usa o topo da pilha
+  private String localDoEvento(RecordedEvent evento) {
+    RecordedStackTrace pilha = evento.getStackTrace();
+    if (pilha == null || pilha.getFrames().isEmpty()) {
+      return "desconhecido";
+    }
+    for (RecordedFrame frame : pilha.getFrames()) {
+      String classe = frame.getMethod().getType().getName();
+      if (classe.startsWith("server.") || classe.startsWith("classes.")) {
+        return classe + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+      }
+    }
+    RecordedFrame topo = pilha.getFrames().get(0);
+    return topo.getMethod().getType().getName() + "." + topo.getMethod().getName();
+  }
+
+  private void imprimirRelatorio() {
+    if (eventosIntervalo.getAndSet(0) == 0) {
+      return;
+    }
+    StringBuilder relatorio = new StringBuilder();
+    relatorio.append("Pinning de threads virtuais nos ultimos ").append(Constants.INTERVALO_RELATORIO_PINNING)
+        .append("s (total desde o inicio: ").append(totalEventos.get()).append(")\n");
+    Iterator<Map.Entry<String, LongAdder>> it = eventosPorLocal.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, LongAdder> entrada = it.next();
+      String local = entrada.getKey();
+      long eventos = entrada.getValue().sumThenReset();
+      LongAdder nanos = nanosPorLocal.get(local);
+      long totalMs = nanos == null ? 0 : nanos.sumThenReset() / 1_000_000;
+      if (eventos == 0) {
+        continue;
+      }
+      relatorio.append("  ").append(eventos).append(" eventos, ").append(totalMs).append("ms em ").append(local)
+          .append("\n");
+    }
+    System.out.print(relatorio);
+  }
+}
@@ -0,0 +1,521 @@
+package server;
+
+import java.util.*;
+import java.util.function.*;
+import classes.*;
+
+// Classe que interpreta as linhas enviadas pelos clientes e chama os métodos do
+// GameManager, separada do Server para que o mesmo código seja usado tanto no
+// modo de uma thread por cliente quanto no modo NIO
+// As linhas chegam já separadas em campos (LinhaComando), o comando é achado
+// pela ArvoreComandos e executado pela tabela de executores, indexada pela
+// posição do comando no enum
+// Depois do CADASTRAR ou do RETOMAR a conexão fica ligada ao cliente (sessão) e
+// os comandos autenticados podem vir sem <nome> <token>, nesse caso o cliente
+// vem direto da conexão, sem busca na lista de clientes nem comparação de token
+public class ProcessadorComandos {
+  // Executa um comando, retorna true se o cliente pediu para sair
+  // arg é o índice do primeiro argumento do comando depois do nome e do token
+  // (3 quando eles foram enviados, 1 quando foram omitidos) e sessao é o cliente
+  // ligado à conexão, ou null se o comando precisa validar o nome e o token
+  private interface ExecutorComando {
+    boolean executar(LinhaComando linha, int arg, Cliente sessao, Conexao conexao);
+  }
+
+  private final GameManager gameManager;
+  private final RegistroClientes listaCliente;
+  private final Metricas metricas;
+  private final Consumer<String> contadorRespostas;
+  private final ArvoreComandos arvoreComandos = new ArvoreComandos(new Tradutor());
+  private final ExecutorComando[] executores = new ExecutorComando[Comando.values().length];
+
+  public ProcessadorComandos(GameManager gameManager) {
+    this.gameManager = gameManager;
+    this.listaCliente = gameManager.getListaCliente();
+    this.metricas = gameManager.getMetricas();
+    this.contadorRespostas = metricas::registrarResposta;
+
+    executores[Comando.CADASTRAR.ordinal()] = this::cadastrar;
+    executores[Comando.LISTARPARTIDAS.ordinal()] = this::listarPartidas;
+    executores[Comando.LISTARJOGADORES.ordinal()] = this::listarJogadores;
+    executores[Comando.ENTRARPARTIDA.ordinal()] = this::entrarPartida;
+    executores[Comando.DESAFIAR.ordinal()] = this::desafiar;
+    executores[Comando.ACEITARDESAFIO.ordinal()] = this::aceitarDesafio;
+    executores[Comando.RECUSARDESAFIO.ordinal()] = this::recusarDesafio;
+    executores[Comando.CHATGLOBAL.ordinal()] = this::chatGlobal;
+    executores[Comando.CHATPARTIDA.ordinal()] = this::chatPartida;
+    executores[Comando.CHATJOGADOR.ordinal()] = this::chatJogador;
+    executores[Comando.PRONTOPARTIDA.ordinal()] = this::prontoPartida;
+    executores[Comando.MOVER.ordinal()] = (linha, arg, sessao, conexao) -> acaoTabuleiro(Comando.MOVER, linha,
+        arg, sessao, conexao);
+    executores[Comando.ATACAR.ordinal()] = (linha, arg, sessao, conexao) -> acaoTabuleiro(Comando.ATACAR, linha,
+        arg, sessao, conexao);
+    executores[Comando.SONAR.ordinal()] = (linha, arg, sessao, conexao) -> acaoTabuleiro(Comando.SONAR, linha,
+        arg, sessao, conexao);
+    executores[Comando.PASSAR.ordinal()] = this::passar;
+    executores[Comando.SAIRPARTIDA.ordinal()] = this::sairPartida;
+    executores[Comando.SAIR.ordinal()] = this::sair;
+    executores[Comando.KEEPALIVE.ordinal()] = this::keepAlive;
+    executores[Comando.DELTALOBBY.ordinal()] = this::deltaLobby;
+    executores[Comando.RETOMAR.ordinal()] = this::retomar;
+    executores[Comando.DESCONHECIDO.ordinal()] = this::desconhecido;
+  }
+
+  // Liga uma conexão nova às métricas, para as respostas enviadas a ela serem
+  // contadas por código
+  public void prepararConexao(Conexao conexao) {
+    conexao.setObservadorRespostas(contadorRespostas);
+  }
+
+  // Método que recebe um indice para verificar se foi informado algo para o campo
+  // daquele indice
+  // Se não foi informado, envia uma mensagem dizendo que nomeCampo não foi
+  // informado ao cliente
+  private boolean verificarCampo(String nomeCampo, int indice, LinhaComando linha, String tipo, Conexao conexao) {
+    if (linha.campoVazio(indice)) {
+      enviarLinha(conexao, tipo, "400", nomeCampo + " nao informado", "campo:" + nomeCampo);
+      return false;
+    }
+    return true;
+  }
+
+  // Verifica se o nome (campo 1) e o token (campo 2) foram informados, só quando
+  // a conexão não tem uma sessão
+  private boolean verificarCredenciais(String nomeCampo, LinhaComando linha, Cliente sessao, String tipo,
+      Conexao conexao) {
+    if (sessao != null)
+      return true;
+    return verificarCampo(nomeCampo, 1, linha, tipo, conexao) && verificarCampo("token", 2, linha, tipo, conexao);
+  }
+
+  // Método para validar se o cliente existe e se o token está correto, se estiver
+  // correto, ele vai setar a conexão do cliente novamente
+  private boolean validarCliente(Cliente cliente, String tokenCliente, String tipo, Conexao conexao) {
+    if (cliente == null) {
+      enviarLinha(conexao, tipo, "404", "Cliente nao encontrado", "campo:nomeCliente");
+      return false;
+    }
+    if (!cliente.validarToken(tokenCliente)) {
+      enviarLinha(conexao, tipo, "401", "Token invalido", "campo:tokenCliente");
+      return false;
+    }
+
+    atualizarConexao(cliente, conexao);
+
+    // Renova o keepalive para qualquer ação validada
+    gameManager.keepAliveCliente(cliente, Constants.TIPOKEEPALIVE);
+    return true;
+  }
+
+  // Seta a conexão do cliente, para caso ele tiver se desconectado e reconectado
+  private void atualizarConexao(Cliente cliente, Conexao conexao) {
+    if (cliente.getConexao() == conexao)
+      return;
+    cliente.setConexao(conexao);
+
+    // Se o jogador estiver em uma partida vamos atualizar a conexão do seu objeto
+    // jogador também
+    JogoPartida jogoPartida = cliente.getJogoPartida();
+    if (jogoPartida != null) {
+      jogoPartida.getCaixa().execute(metricas.acompanhar(() -> {
+        Jogador jogador = jogoPartida.buscarJogadorPorNome(cliente.getNome());
+        if (jogador != null) {
+          jogador.setConexao(conexao);
+        }
+      }));
+    }
+  }
+
+  // Retorna o cliente que enviou o comando: a sessão da conexão, ou o cliente
+  // buscado pelo nome (campo 1) com o token (campo 2) validado quando não há
+  // sessão. Retorna null se não for válido (o erro já foi enviado)
+  private Cliente clienteValidado(LinhaComando linha, Cliente sessao, String tipo, Conexao conexao) {
+    if (sessao != null) {
+      atualizarConexao(sessao, conexao);
+      gameManager.keepAliveCliente(sessao, Constants.TIPOKEEPALIVE);
+      return sessao;
+    }
+    Cliente cliente = listaCliente.get(linha.campo(1));
+    if (!validarCliente(cliente, linha.campo(2), tipo, conexao))
+      return null;
+    return cliente;
+  }
+
+  // Método para enviar uma linha para o cliente evitando erros de conexão
+  private void enviarLinha(Conexao conexao, String tipo, String codigo, String texto, String valor) {
+    if (conexao == null)
+      return;
+    conexao.enviarLinha(tipo, codigo, texto, valor);
+  }
+
+  // Processa uma linha enviada pelo cliente através da conexão informada
+  // Retorna true se o cliente pediu para sair e a conexão deve ser encerrada
+  public boolean processarLinha(LinhaComando linha, Conexao conexao) {
+    long inicio = System.nanoTime();
+    Comando comando = linha.comando(arvoreComandos);
+    metricas.iniciarComando(comando, inicio);
+    Cliente sessao = null;
+    int arg = 1;
+    if (comando.isAutenticado()) {
+      sessao = conexao.getSessao();
+      if (sessao != null && sessao.isRemovido()) {
+        // O cliente saiu ou foi desconectado por outra conexão
+        conexao.setSessao(null);
+        sessao = null;
+      }
+      // Sem sessão o nome e o token são obrigatórios, com sessão eles ainda são
+      // aceitos (clientes antigos) se forem os do próprio cliente da sessão
+      if (sessao == null || (linha.getNumCampos() > 2 && linha.campoIgual(1, sessao.getNome())
+          && sessao.validarToken(linha.campo(2)))) {
+        arg = 3;
+      }
+    }
+    // Todas as linhas geradas por este comando (resposta e notificações) são
+    // enviadas de uma vez no fim, veja Conexao.finalizarLote
+    Conexao.iniciarLote();
+    // Outro try catch para que um erro em um comando não feche a conexão
+    try {
+      return executores[comando.ordinal()].executar(linha, arg, sessao, conexao);
+    } catch (Exception e) {
+      // Erro inesperado no processamento do comando
+      enviarLinha(conexao, Constants.TIPOERRO, "500", "Erro interno do servidor",
+          "excecao:" + e.getClass().getSimpleName());
+      e.printStackTrace();
+      return false;
+    } finally {
+      Conexao.finalizarLote();
+      metricas.finalizarComando();
+    }
+  }
+
+  // CADASTRAR <nomeCliente>
+  private boolean cadastrar(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOCADASTRAR;
+    if (!verificarCampo("nome", 1, linha, tipo, conexao))
+      return false;
+
+    gameManager.cadastrarCliente(listaCliente, linha.campo(1), conexao, tipo);
+    return false;
+  }
+
+  // LISTARPARTIDAS
+  private boolean listarPartidas(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    gameManager.listarPartidasCliente(conexao, Constants.TIPOLISTARPARTIDAS);
+    return false;
+  }
+
+  // LISTARJOGADORES
+  private boolean listarJogadores(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    gameManager.listarJogadoresCliente(conexao, Constants.TIPOLISTARJOGADORES);
+    return false;
+  }
+
+  // ENTRARPARTIDA [<nome> <token>] <idPartida>
+  private boolean entrarPartida(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOENTRARPARTIDA;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao) ||
+        !verificarCampo("idPartida", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    // Convertendo idPartida para inteiro
+    int idPartida;
+    try {
+      idPartida = linha.campoInteiro(arg);
+    } catch (NumberFormatException e) {
+      cliente.enviarLinha("LISTARPARTIDAS", "400", "id da partida invalido", "campo:idPartida");
+      return false;
+    }
+
+    gameManager.entrarPartidaCliente(cliente, idPartida, tipo);
+    return false;
+  }
+
+  // DESAFIAR [<nomeDesafiante> <token>] <nomeDesafiado> [<tamanhoTabuleiro>]
+  private boolean desafiar(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPODESAFIAR;
+    if (!verificarCredenciais("nomeDesafiante", linha, sessao, tipo, conexao) ||
+        !verificarCampo("nomeDesafiado", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente clienteDesafiante = clienteValidado(linha, sessao, tipo, conexao);
+    if (clienteDesafiante == null)
+      return false;
+
+    Cliente clienteDesafiado = listaCliente.get(linha.campo(arg));
+    if (clienteDesafiado == null) {
+      clienteDesafiante.enviarLinha("DESAFIAR", "404", "Cliente desafiado nao encontrado", "campo:nomeDesafiado");
+      return false;
+    }
+
+    // Tamanho do tabuleiro opcional, usa o padrão se não for informado
+    int tamanhoTabuleiro = Constants.TAMANHO_TABULEIRO;
+    if (!linha.campoVazio(arg + 1)) {
+      try {
+        tamanhoTabuleiro = linha.campoInteiro(arg + 1);
+      } catch (NumberFormatException e) {
+        tamanhoTabuleiro = -1;
+      }
+      if (tamanhoTabuleiro < Constants.TAMANHO_TABULEIRO_MIN || tamanhoTabuleiro > Constants.TAMANHO_TABULEIRO_MAX) {
+        clienteDesafiante.enviarLinha(tipo, "400", "Tamanho do tabuleiro deve ser entre "
+            + Constants.TAMANHO_TABULEIRO_MIN + " e " + Constants.TAMANHO_TABULEIRO_MAX, "campo:tamanhoTabuleiro");
+        return false;
+      }
+    }
+
+    gameManager.desafiarCliente(clienteDesafiante, clienteDesafiado, tamanhoTabuleiro, tipo);
+    return false;
+  }
+
+  // ACEITARDESAFIO [<nomeDesafiado> <token>] <nomeDesafiante>
+  private boolean aceitarDesafio(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOACEITARDESAFIO;
+    if (!verificarCredenciais("nomeDesafiado", linha, sessao, tipo, conexao) ||
+        !verificarCampo("nomeDesafiante", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente clienteDesafiado = clienteValidado(linha, sessao, tipo, conexao);
+    if (clienteDesafiado == null)
+      return false;
+
+    Cliente clienteDesafiante = listaCliente.get(linha.campo(arg));
+    if (clienteDesafiante == null) {
+      clienteDesafiado.enviarLinha("ACEITARDESAFIO", "404", "Cliente desafiante nao encontrado",
+          "campo:nomeDesafiante");
+      return false;
+    }
+
+    gameManager.aceitarDesafioCliente(clienteDesafiado, clienteDesafiante, tipo);
+    return false;
+  }
+
+  // RECUSARDESAFIO [<nomeDesafiado> <token>] <nomeDesafiante>
+  private boolean recusarDesafio(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPORECUSARDESAFIO;
+    if (!verificarCredenciais("nomeDesafiado", linha, sessao, tipo, conexao) ||
+        !verificarCampo("nomeDesafiante", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente clienteDesafiado = clienteValidado(linha, sessao, tipo, conexao);
+    if (clienteDesafiado == null)
+      return false;
+
+    Cliente clienteDesafiante = listaCliente.get(linha.campo(arg));
+    if (clienteDesafiante == null) {
+      clienteDesafiado.enviarLinha("RECUSARDESAFIO", "404", "Cliente desafiante nao encontrado",
+          "campo:nomeDesafiante");
+      return false;
+    }
+
+    gameManager.recusarDesafioCliente(clienteDesafiado, clienteDesafiante, tipo);
+    return false;
+  }
+
+  // CHATGLOBAL [<nome> <token>] <mensagem>
+  private boolean chatGlobal(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOCHATGLOBAL;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao) ||
+        !verificarCampo("mensagem", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    // A mensagem é o resto da linha, com os espaços originais
+    gameManager.chatGlobalCliente(cliente, linha.restoAPartir(arg), tipo);
+    return false;
+  }
+
+  // CHATPARTIDA [<nome> <token>] <mensagem>
+  private boolean chatPartida(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOCHATPARTIDA;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao) ||
+        !verificarCampo("mensagem", arg, linha, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.chatPartidaCliente(cliente, linha.restoAPartir(arg), tipo);
+    return false;
+  }
+
+  // CHATJOGADOR [<nome> <token>] <nomeDestinatario> <mensagem>
+  private boolean chatJogador(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOCHATJOGADOR;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao) ||
+        !verificarCampo("nomeDestinatario", arg, linha, tipo, conexao) ||
+        !verificarCampo("mensagem", arg + 1, linha, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.chatJogadorCliente(cliente, linha.campo(arg), linha.restoAPartir(arg + 1), tipo);
+    return false;
+  }
+
+  // PRONTOPARTIDA [<nome> <token>]
+  private boolean prontoPartida(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOPRONTOPARTIDA;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.prontoPartidaCliente(cliente, tipo);
+    return false;
+  }
+
+  // MOVER [<nome> <token>] <posicaoX> <posicaoY> <modoDeslocamento>
+  // ATACAR [<nome> <token>] <posicaoX> <posicaoY> <modoDeslocamento>
+  // SONAR [<nome> <token>] <posicaoX> <posicaoY> <modoDeslocamento>
+  private boolean acaoTabuleiro(Comando comando, LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = comando.getTipo();
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao) ||
+        !verificarCampo("posicaoX", arg, linha, tipo, conexao) ||
+        !verificarCampo("posicaoY", arg + 1, linha, tipo, conexao))
+      return false;
+
+    // As coordenadas são lidas direto dos bytes da linha
+    int posicaoX;
+    int posicaoY;
+    try {
+      posicaoX = linha.campoInteiro(arg);
+    } catch (NumberFormatException nfe) {
+      enviarLinha(conexao, tipo, "400", "posicaoX invalido", "campo:posicaoX");
+      return false;
+    }
+    try {
+      posicaoY = linha.campoInteiro(arg + 1);
+    } catch (NumberFormatException nfe) {
+      enviarLinha(conexao, tipo, "400", "posicaoY invalido", "campo:posicaoY");
+      return false;
+    }
+
+    // Opção adicional, se for true, então as posições passadas não serão tratadas
+    // como posições absolutas, mas como deslocamentos relativos
+    boolean deslocamento = false;
+    if (linha.getNumCampos() > arg + 2) {
+      deslocamento = linha.campoIgual(arg + 2, "true") || linha.campoIgual(arg + 2, "1");
+    }
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    switch (comando) {
+      case MOVER:
+        gameManager.moverCliente(cliente, posicaoX, posicaoY, deslocamento, tipo);
+        break;
+      case ATACAR:
+        gameManager.atacarCliente(cliente, posicaoX, posicaoY, deslocamento, tipo);
+        break;
+      default:
+        gameManager.sonarCliente(cliente, posicaoX, posicaoY, deslocamento, tipo);
+        break;
+    }
+    return false;
+  }
+
+  // PASSAR [<nome> <token>]
+  private boolean passar(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOPASSAR;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.passarCliente(cliente, tipo);
+    return false;
+  }
+
+  // SAIRPARTIDA [<nome> <token>]
+  private boolean sairPartida(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOSAIRPARTIDA;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.sairPartidaCliente(cliente, tipo);
+    return false;
+  }
+
+  // SAIR [<nome> <token>]
+  private boolean sair(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOSAIR;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    System.out.println("Removendo cliente: " + cliente.getNome());
+
+    gameManager.sairCliente(cliente, tipo);
+
+    // Marca para encerrar o loop de leitura e fechar o socket
+    return true;
+  }
+
+  // KEEPALIVE [<nome> <token>]
+  private boolean keepAlive(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPOKEEPALIVE;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    // Validar o cliente já renova o keepalive
+    clienteValidado(linha, sessao, tipo, conexao);
+    return false;
+  }
+
+  // DELTALOBBY [<nome> <token>]
+  private boolean deltaLobby(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPODELTALOBBY;
+    if (!verificarCredenciais("nome", linha, sessao, tipo, conexao))
+      return false;
+
+    Cliente cliente = clienteValidado(linha, sessao, tipo, conexao);
+    if (cliente == null)
+      return false;
+
+    gameManager.deltaLobbyCliente(cliente, tipo);
+    return false;
+  }
+
+  // RETOMAR <nome> <token>
+  // Liga a conexão ao cliente, usado ao reconectar com um cadastro existente
+  private boolean retomar(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    String tipo = Constants.TIPORETOMAR;
+    if (!verificarCampo("nome", 1, linha, tipo, conexao) ||
+        !verificarCampo("token", 2, linha, tipo, conexao))
+      return false;
+
+    Cliente cliente = listaCliente.get(linha.campo(1));
+    if (!validarCliente(cliente, linha.campo(2), tipo, conexao))
+      return false;
+
+    conexao.setSessao(cliente);
+    cliente.enviarLinha(tipo, "200", "Sessao retomada", "nome:" + cliente.getNome());
+    return false;
+  }
+
+  private boolean desconhecido(LinhaComando linha, int arg, Cliente sessao, Conexao conexao) {
+    enviarLinha(conexao, "DESCONHECIDO", "405", "Comando desconhecido", "");
+    return false;
+  }
+}
@@ -0,0 +1,39 @@
+package server;
+
+import classes.*;
+
+// Clientes conectados indexados pelo nome (só um cliente por nome)
+// É o canal de todos os clientes conectados: buscar, cadastrar e remover usam o
+// ConcurrentHashMap do canal, sem trava única para todos os comandos, e quem
+// percorre os clientes (lista de jogadores, difusor do lobby) usa o retrato do
+// canal, montado de novo só quando alguém entra ou sai (ver Canal)
+public class RegistroClientes {
+  private final Canal conectados = new Canal("conectados");
+
+  public Cliente get(String nome) {
+    return conectados.buscar(nome);
+  }
+
+  // Retorna o cliente que já tinha o nome, ou null se foi cadastrado
+  public Cliente putIfAbsent(String nome, Cliente cliente) {
+    return conectados.inscreverSeAusente(cliente);
+  }
+
+  // Só remove se o nome ainda for deste cliente
+  public boolean remover(Cliente cliente) {
+    return conectados.desinscrever(cliente);
+  }
+
+  public int tamanho() {
+    return conectados.tamanho();
+  }
+
+  public Canal.Retrato retrato() {
+    return conectados.retrato();
+  }
+
+  // Canal com todos os clientes conectados
+  public Canal getCanal() {
+    return this.conectados;
+  }
+}
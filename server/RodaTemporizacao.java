@@ -0,0 +1,211 @@
+package server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+// Roda de temporização (hashed timing wheel) para os timers do servidor, como
+// os prazos dos turnos
+// O tempo é dividido em ticks e a roda tem numSlots posições, cada timer fica
+// na lista da posição do tick em que vence (módulo numSlots). Uma única thread
+// avança um tick por vez e só olha a lista da posição atual, os timers que
+// vencem em outra volta da roda continuam na lista até a volta certa
+// Agendar é colocar numa fila e cancelar é só marcar o timer, os dois O(1) e
+// sem trava. O timer cancelado sai da lista quando a roda passa por ele
+// Adiar um timer só troca o prazo: quando a roda chega
+// nele e o prazo ainda não venceu, ele é movido para a posição do novo prazo,
+// então adiar várias vezes não cria nem cancela nada
+// As tarefas rodam na thread da roda, devem ser rápidas (as que demoram devem
+// ser entregues a outro executor)
+public class RodaTemporizacao {
+  private static final int ATIVO = 0;
+  private static final int CANCELADO = 1;
+  private static final int EXECUTADO = 2;
+
+  private final long nanosTick;
+  private final Temporizador[] slots;
+  // Timers agendados por outras threads esperando a roda colocá-los nos slots
+  private final ConcurrentLinkedQueue<Temporizador> novos = new ConcurrentLinkedQueue<>();
+  private final long inicio = System.nanoTime();
+  // Próximo tick a ser processado, só usado pela thread da roda
+  private long tickAtual = 0;
+
+  // Contadores de uso da roda
+  private final AtomicLong agendados = new AtomicLong();
+  private final AtomicLong adiados = new AtomicLong();
+  private final AtomicLong cancelados = new AtomicLong();
+  private final AtomicLong executados = new AtomicLong();
+  // Vezes que um timer foi movido de posição por ter sido adiado
+  private final AtomicLong reposicionados = new AtomicLong();
+
+  public RodaTemporizacao(String nome, long msTick, int numSlots) {
+    this.nanosTick = TimeUnit.MILLISECONDS.toNanos(msTick);
+    this.slots = new Temporizador[numSlots];
+    Thread thread = new Thread(this::girar, nome);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  // Agenda a tarefa para daqui a atrasoMs, retorna o timer para cancelar ou
+  // adiar
+  public Temporizador agendar(Runnable tarefa, long atrasoMs) {
+    Temporizador temporizador = new Temporizador(this, tarefa, prazoDaqui(atrasoMs));
+    agendados.incrementAndGet();
+    novos.add(temporizador);
+    return temporizador;
+  }
+
+  private long prazoDaqui(long atrasoMs) {
+    return System.nanoTime() - inicio + TimeUnit.MILLISECONDS.toNanos(atrasoMs);
+  }
+
+  public long getAgendados() {
+    return agendados.get();
+  }
+
+  public long getAdiados() {
+    return adiados.get();
+  }
+
+  public long getCancelados() {
+    return cancelados.get();
+  }
+
+  public long getExecutados() {
+    return executados.get();
+  }
+
+  public long getReposicionados() {
+    return reposicionados.get();
+  }
+
+  private void girar() {
+    while (true) {
+      long fimTick = (tickAtual + 1) * nanosTick;
+      long espera = fimTick - (System.nanoTime() - inicio);
+      if (espera > 0) {
+        LockSupport.parkNanos(espera);
+        continue;
+      }
+      colocarNovos();
+      processarSlot();
+      tickAtual++;
+    }
+  }
+
+  private void colocarNovos() {
+    Temporizador temporizador;
+    while ((temporizador = novos.poll()) != null) {
+      if (temporizador.estado.get() == ATIVO) {
+        inserir(temporizador);
+      }
+    }
+  }
+
+  // Tick em que o prazo vence, nunca antes do tick sendo processado
+  private long tickDoPrazo(long prazo) {
+    return Math.max(tickAtual, prazo / nanosTick);
+  }
+
+  private void inserir(Temporizador temporizador) {
+    int slot = (int) (tickDoPrazo(temporizador.prazo) % slots.length);
+    temporizador.slot = slot;
+    temporizador.anterior = null;
+    temporizador.proximo = slots[slot];
+    if (slots[slot] != null) {
+      slots[slot].anterior = temporizador;
+    }
+    slots[slot] = temporizador;
+  }
+
+  private void remover(Temporizador temporizador) {
+    if (temporizador.anterior != null) {
+      temporizador.anterior.proximo = temporizador.proximo;
+    } else {
+      slots[temporizador.slot] = temporizador.proximo;
+    }
+    if (temporizador.proximo != null) {
+      temporizador.proximo.anterior = temporizador.anterior;
+    }
+    temporizador.anterior = null;
+    temporizador.proximo = null;
+  }
+
+  private void processarSlot() {
+    int slot = (int) (tickAtual % slots.length);
+    Temporizador temporizador = slots[slot];
+    while (temporizador != null) {
+      Temporizador proximo = temporizador.proximo;
+      if (temporizador.estado.get() != ATIVO) {
+        remover(temporizador);
+      } else {
+        long tickPrazo = tickDoPrazo(temporizador.prazo);
+        if (tickPrazo > tickAtual) {
+          // Vence numa próxima volta ou foi adiado para outra posição
+          if (tickPrazo % slots.length != slot) {
+            remover(temporizador);
+            inserir(temporizador);
+            reposicionados.incrementAndGet();
+          }
+        } else {
+          remover(temporizador);
+          if (temporizador.estado.compareAndSet(ATIVO, EXECUTADO)) {
+            executados.incrementAndGet();
+            try {
+              temporizador.tarefa.run();
+            } catch (Exception e) {
+              e.printStackTrace();
+            }
+          }
+        }
+      }
+      temporizador = proximo;
+    }
+  }
+
+  // Timer agendado na roda
+  public static class Temporizador {
+    private final RodaTemporizacao roda;
+    private final Runnable tarefa;
+    private final AtomicInteger estado = new AtomicInteger(ATIVO);
+    // Prazo em nanos desde o início da roda, pode ser adiado por outra thread
+    private volatile long prazo;
+    // Posição na lista do slot, só usados pela thread da roda
+    private int slot;
+    private Temporizador anterior;
+    private Temporizador proximo;
+
+    private Temporizador(RodaTemporizacao roda, Runnable tarefa, long prazo) {
+      this.roda = roda;
+      this.tarefa = tarefa;
+      this.prazo = prazo;
+    }
+
+    // Retorna false se o timer já tinha vencido ou sido cancelado
+    public boolean cancelar() {
+      if (estado.compareAndSet(ATIVO, CANCELADO)) {
+        roda.cancelados.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    // Troca o prazo para daqui a atrasoMs, retorna false se o timer já venceu
+    // ou foi cancelado (quem chama deve agendar um novo)
+    // Só deve ser usado para prazos iguais ou maiores que o atual, a roda só
+    // olha o timer quando chega no prazo antigo
+    public boolean adiar(long atrasoMs) {
+      if (estado.get() != ATIVO) {
+        return false;
+      }
+      prazo = roda.prazoDaqui(atrasoMs);
+      roda.adiados.incrementAndGet();
+      // Pode ter vencido enquanto o prazo era trocado
+      return estado.get() == ATIVO;
+    }
+
+    public boolean isAtivo() {
+      return estado.get() == ATIVO;
+    }
+  }
+}
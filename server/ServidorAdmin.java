@@ -0,0 +1,303 @@
+package server;
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.sun.net.httpserver.*;
+import classes.*;
+
+// Servidor HTTP local com as estatísticas do servidor em tempo real, para ver
+// problemas de carga sem precisar de um depurador:
+//   /estatisticas  JSON
+//   /metrics       texto no formato do Prometheus
+// Escuta só no endereço local, na PORTA_ADMIN ou na porta do terceiro argumento
+// do Server (desativado por padrão), e roda numa thread própria. Cada requisição
+// lê os contadores que o servidor já mantém (GameManager, Metricas, shards,
+// conexões) e monta a resposta na hora
+public class ServidorAdmin {
+  private static final double[] QUANTIS = { 0.5, 0.99, 0.999 };
+
+  private final GameManager gameManager;
+  private HttpServer http;
+
+  public ServidorAdmin(GameManager gameManager) {
+    this.gameManager = gameManager;
+  }
+
+  public void iniciar(int porta) {
+    try {
+      http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+    } catch (IOException e) {
+      // Sem as estatísticas o jogo continua funcionando
+      System.err.println("Nao foi possivel abrir a porta de administracao " + porta + ": " + e.getMessage());
+      return;
+    }
+    http.createContext("/estatisticas", troca -> responder(troca, "application/json", coletar().json()));
+    http.createContext("/metrics",
+        troca -> responder(troca, "text/plain; version=0.0.4", coletar().prometheus()));
+    http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "servidor-admin");
+      t.setDaemon(true);
+      return t;
+    }));
+    http.start();
+    System.out.println("Estatisticas em http://localhost:" + porta + "/estatisticas e /metrics");
+  }
+
+  private void responder(HttpExchange troca, String tipoConteudo, String corpo) throws IOException {
+    try {
+      if (!"GET".equals(troca.getRequestMethod())) {
+        troca.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] bytes = corpo.getBytes("UTF-8");
+      troca.getResponseHeaders().set("Content-Type", tipoConteudo + "; charset=utf-8");
+      troca.sendResponseHeaders(200, bytes.length);
+      try (OutputStream saida = troca.getResponseBody()) {
+        saida.write(bytes);
+      }
+    } finally {
+      troca.close();
+    }
+  }
+
+  // Lê todos os valores de uma vez, os dois formatos mostram a mesma coleta
+  private Coleta coletar() {
+    Coleta coleta = new Coleta();
+
+    Canal.Retrato conectados = gameManager.getListaCliente().retrato();
+    coleta.metrica("servidor_clientes_conectados", "gauge", "Clientes cadastrados e conectados")
+        .amostra("", conectados.getClientes().length);
+    coleta.metrica("servidor_clientes_lobby", "gauge", "Clientes fora de uma partida em andamento")
+        .amostra("", gameManager.getCanalLobby().tamanho());
+    coleta.metrica("servidor_partidas_andamento", "gauge", "Partidas em andamento (publicas e desafios)")
+        .amostra("", gameManager.getNumeroPartidasAndamento());
+
+    coleta.metrica("servidor_partida_publica_jogadores", "gauge", "Jogadores em cada partida publica");
+    List<Partida> partidas = new ArrayList<>(gameManager.getPartidas());
+    partidas.sort(Comparator.comparingInt(Partida::getId));
+    for (Partida partida : partidas) {
+      coleta.amostra("", partida.getNumClientes(), "id", String.valueOf(partida.getId()));
+    }
+    coleta.metrica("servidor_partida_publica_max_jogadores", "gauge", "Vagas de cada partida publica");
+    for (Partida partida : partidas) {
+      coleta.amostra("", partida.getNumMaxClientes(), "id", String.valueOf(partida.getId()));
+    }
+    coleta.metrica("servidor_partida_publica_andamento", "gauge", "1 se a partida publica esta em andamento");
+    for (Partida partida : partidas) {
+      coleta.amostra("", partida.getAndamento() ? 1 : 0, "id", String.valueOf(partida.getId()));
+    }
+
+    coleta.metrica("servidor_timers_turno_pendentes", "gauge", "Timers de turno agendados")
+        .amostra("", gameManager.getTimersTurnoPendentes());
+    coleta.metrica("servidor_keepalives_monitorados", "gauge", "Clientes verificados pela varredura do keepalive")
+        .amostra("", gameManager.getKeepAlivesMonitorados());
+    RodaTemporizacao roda = gameManager.getRodaTemporizacao();
+    coleta.metrica("servidor_roda_timers_total", "counter", "Timers da roda de temporizacao por evento")
+        .amostra("", roda.getAgendados(), "evento", "agendado")
+        .amostra("", roda.getCancelados(), "evento", "cancelado")
+        .amostra("", roda.getExecutados(), "evento", "executado");
+
+    // Filas de saída dos clientes conectados
+    long totalFila = 0;
+    long maiorFila = 0;
+    long descartadas = 0;
+    for (Cliente cliente : conectados.getClientes()) {
+      Conexao conexao = cliente.getConexao();
+      if (conexao == null) {
+        continue;
+      }
+      int fila = conexao.getTamanhoFila();
+      totalFila += fila;
+      maiorFila = Math.max(maiorFila, fila);
+      descartadas += conexao.getMensagensDescartadas();
+    }
+    coleta.metrica("servidor_fila_saida_mensagens", "gauge", "Mensagens esperando nas filas de saida")
+        .amostra("", totalFila, "fila", "total")
+        .amostra("", maiorFila, "fila", "maior");
+    coleta.metrica("servidor_mensagens_descartadas", "gauge",
+        "Mensagens descartadas por fila cheia nas conexoes dos clientes conectados").amostra("", descartadas);
+
+    Metricas metricas = gameManager.getMetricas();
+    coleta.metrica("servidor_comando_latencia_segundos", "summary",
+        "Latencia de cada comando, ate o fim das tarefas dele na caixa da partida");
+    for (Comando comando : Comando.values()) {
+      Histograma latencia = metricas.getLatencia(comando);
+      if (latencia.getContagem() == 0) {
+        continue;
+      }
+      String nome = comando.name();
+      for (double quantil : QUANTIS) {
+        coleta.amostra("", latencia.percentil(quantil) / 1e9, "comando", nome, "quantile", String.valueOf(quantil));
+      }
+      coleta.amostra("_sum", latencia.getSoma() / 1e9, "comando", nome);
+      coleta.amostra("_count", latencia.getContagem(), "comando", nome);
+    }
+    coleta.metrica("servidor_respostas_erro_total", "counter", "Respostas enviadas com codigo de erro");
+    for (int codigo : Metricas.getCodigosErro()) {
+      coleta.amostra("", metricas.getRespostas(codigo), "codigo", String.valueOf(codigo));
+    }
+    Histograma destinatarios = Canal.getHistogramaDestinatarios();
+    coleta.metrica("servidor_broadcast_destinatarios", "summary", "Destinatarios de cada broadcast");
+    for (double quantil : QUANTIS) {
+      coleta.amostra("", destinatarios.percentil(quantil), "quantile", String.valueOf(quantil));
+    }
+    coleta.amostra("_sum", destinatarios.getSoma()).amostra("_count", destinatarios.getContagem());
+
+    ShardsPartidas shards = gameManager.getShardsPartidas();
+    coleta.metrica("servidor_shard_tarefas_total", "counter", "Tarefas executadas por shard das partidas");
+    for (int i = 0; i < shards.getNumeroShards(); i++) {
+      coleta.amostra("", shards.getShard(i).getTarefasExecutadas(), "shard", String.valueOf(i));
+    }
+    coleta.metrica("servidor_shard_tarefas_pendentes", "gauge", "Tarefas na fila de cada shard das partidas");
+    for (int i = 0; i < shards.getNumeroShards(); i++) {
+      coleta.amostra("", shards.getShard(i).getTarefasPendentes(), "shard", String.valueOf(i));
+    }
+    coleta.metrica("servidor_shard_ocupado_segundos_total", "counter", "Tempo ocupado de cada shard das partidas");
+    for (int i = 0; i < shards.getNumeroShards(); i++) {
+      coleta.amostra("", shards.getShard(i).getNanosOcupado() / 1e9, "shard", String.valueOf(i));
+    }
+
+    coleta.metrica("servidor_turnos_resolvidos_total", "counter", "Turnos resolvidos em todas as partidas")
+        .amostra("", gameManager.getTurnosResolvidos());
+    coleta.metrica("servidor_turno_resolucao_segundos_total", "counter", "Tempo gasto resolvendo os turnos")
+        .amostra("", gameManager.getNanosResolucaoTurnos() / 1e9);
+    coleta.metrica("servidor_turno_envio_segundos_total", "counter", "Tempo gasto enviando os eventos dos turnos")
+        .amostra("", gameManager.getNanosEnvioTurnos() / 1e9);
+    coleta.metrica("servidor_deteccao_verificacoes_total", "counter",
+        "Verificacoes dispositivo x jogador na deteccao").amostra("", gameManager.getVerificacoesDeteccao());
+    DifusorLobby difusor = gameManager.getDifusorLobby();
+    coleta.metrica("servidor_lobby_mudancas_total", "counter", "Mudancas do lobby")
+        .amostra("", difusor.getTotalMudancas());
+    coleta.metrica("servidor_lobby_envios_total", "counter", "Envios do lobby (mudancas juntadas por janela)")
+        .amostra("", difusor.getTotalEnvios());
+
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    coleta.metrica("jvm_heap_bytes", "gauge", "Memoria heap da JVM")
+        .amostra("", heap.getUsed(), "area", "usado")
+        .amostra("", heap.getCommitted(), "area", "reservado")
+        .amostra("", heap.getMax(), "area", "maximo");
+    coleta.metrica("jvm_gc_colecoes_total", "counter", "Coletas de lixo por coletor");
+    List<GarbageCollectorMXBean> coletores = ManagementFactory.getGarbageCollectorMXBeans();
+    for (GarbageCollectorMXBean coletor : coletores) {
+      coleta.amostra("", coletor.getCollectionCount(), "coletor", coletor.getName());
+    }
+    coleta.metrica("jvm_gc_segundos_total", "counter", "Tempo em coleta de lixo por coletor");
+    for (GarbageCollectorMXBean coletor : coletores) {
+      coleta.amostra("", coletor.getCollectionTime() / 1e3, "coletor", coletor.getName());
+    }
+    coleta.metrica("jvm_threads", "gauge", "Threads da JVM")
+        .amostra("", ManagementFactory.getThreadMXBean().getThreadCount());
+    return coleta;
+  }
+
+  // Valores coletados, agrupados por métrica na ordem em que foram adicionados
+  private static class Coleta {
+    private static class Metrica {
+      final String nome;
+      final String tipo;
+      final String ajuda;
+      final List<Amostra> amostras = new ArrayList<>();
+
+      Metrica(String nome, String tipo, String ajuda) {
+        this.nome = nome;
+        this.tipo = tipo;
+        this.ajuda = ajuda;
+      }
+    }
+
+    // Uma amostra da métrica, o sufixo é usado no _sum e _count dos summary
+    private static class Amostra {
+      final String sufixo;
+      final double valor;
+      final String[] rotulos;
+
+      Amostra(String sufixo, double valor, String[] rotulos) {
+        this.sufixo = sufixo;
+        this.valor = valor;
+        this.rotulos = rotulos;
+      }
+    }
+
+    private final List<Metrica> metricas = new ArrayList<>();
+
+    Coleta metrica(String nome, String tipo, String ajuda) {
+      metricas.add(new Metrica(nome, tipo, ajuda));
+      return this;
+    }
+
+    // Adiciona a amostra na última métrica, rotulos são pares nome, valor
+    Coleta amostra(String sufixo, double valor, String... rotulos) {
+      metricas.get(metricas.size() - 1).amostras.add(new Amostra(sufixo, valor, rotulos));
+      return this;
+    }
+
+    String prometheus() {
+      StringBuilder texto = new StringBuilder();
+      for (Metrica metrica : metricas) {
+        texto.append("# HELP ").append(metrica.nome).append(' ').append(metrica.ajuda).append('\n');
+        texto.append("# TYPE ").append(metrica.nome).append(' ').append(metrica.tipo).append('\n');
+        for (Amostra amostra : metrica.amostras) {
+          texto.append(metrica.nome).append(amostra.sufixo);
+          if (amostra.rotulos.length > 0) {
+            texto.append('{');
+            for (int i = 0; i < amostra.rotulos.length; i += 2) {
+              if (i > 0) {
+                texto.append(',');
+              }
+              texto.append(amostra.rotulos[i]).append("=\"").append(escapar(amostra.rotulos[i + 1])).append('"');
+            }
+            texto.append('}');
+          }
+          texto.append(' ').append(formatar(amostra.valor)).append('\n');
+        }
+      }
+      return texto.toString();
+    }
+
+    // Cada métrica vira um campo com a lista das amostras:
+    // {"nome": [{"rotulo": "valor", ..., "valor": 1}, ...], ...}
+    String json() {
+      StringBuilder texto = new StringBuilder("{");
+      for (int m = 0; m < metricas.size(); m++) {
+        Metrica metrica = metricas.get(m);
+        if (m > 0) {
+          texto.append(',');
+        }
+        texto.append("\n  \"").append(metrica.nome).append("\": [");
+        for (int a = 0; a < metrica.amostras.size(); a++) {
+          Amostra amostra = metrica.amostras.get(a);
+          if (a > 0) {
+            texto.append(", ");
+          }
+          texto.append('{');
+          if (!amostra.sufixo.isEmpty()) {
+            texto.append("\"campo\": \"").append(amostra.sufixo.substring(1)).append("\", ");
+          }
+          for (int i = 0; i < amostra.rotulos.length; i += 2) {
+            texto.append('"').append(amostra.rotulos[i]).append("\": \"").append(escapar(amostra.rotulos[i + 1]))
+                .append("\", ");
+          }
+          texto.append("\"valor\": ").append(formatar(amostra.valor)).append('}');
+        }
+        texto.append(']');
+      }
+      return texto.append("\n}\n").toString();
+    }
+
+    // Inteiros sem casas decimais, os outros com o ponto como separador
+    private static String formatar(double valor) {
+      if (valor == Math.rint(valor) && Math.abs(valor) < 1e15) {
+        return String.valueOf((long) valor);
+      }
+      return String.valueOf(valor);
+    }
+
+    // Mesmo escape de aspas e barra nos dois formatos
+    private static String escapar(String texto) {
+      return texto.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import classes.*;
+
+// Servidor não bloqueante baseado em Selector/SocketChannel
+// Em vez de uma thread por cliente, um número fixo de loops de I/O
+// (Constants.NUMERO_LOOPS_NIO) atende todas as conexões, cada loop separa as
+// linhas recebidas e repassa os comandos completos ao ProcessadorComandos
+public class ServidorNio {
+  private final ProcessadorComandos processador;
+  private final LoopNio[] loops;
+
+  public ServidorNio(ProcessadorComandos processador) {
+    this.processador = processador;
+    this.loops = new LoopNio[Constants.NUMERO_LOOPS_NIO];
+  }
+
+  public void executar() throws IOException {
+    ServerSocketChannel welcomeChannel = null;
+    // Código para testar várias portas se a porta padrão já estiver em uso
+    int tryPort = Constants.PORTA_SERVIDOR;
+    for (int i = 0; i < 10; i++) {
+      try {
+        welcomeChannel = ServerSocketChannel.open();
+        welcomeChannel.bind(new InetSocketAddress(tryPort));
+        System.out.println("Servidor iniciado na porta " + tryPort);
+        break;
+      } catch (BindException be) {
+        welcomeChannel.close();
+        welcomeChannel = null;
+        tryPort++;
+      }
+    }
+    if (welcomeChannel == null) {
+      System.err.println("Nao foi possivel abrir nenhuma porta a partir de " + Constants.PORTA_SERVIDOR);
+      return;
+    }
+
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new LoopNio(i);
+      loops[i].start();
+    }
+
+    int proximoLoop = 0;
+    try {
+      while (true) {
+        // O canal de boas-vindas continua bloqueante, então o accept fica na
+        // thread principal e apenas as conexões aceitas vão para os loops
+        SocketChannel canal = welcomeChannel.accept();
+        canal.configureBlocking(false);
+
+        Socket socket = canal.socket();
+        System.out.println("Cliente conectado: " + socket.getInetAddress().getHostAddress() + ":"
+            + socket.getPort());
+
+        // Distribui as conexões entre os loops em sequência (round robin)
+        loops[proximoLoop].registrar(canal);
+        proximoLoop = (proximoLoop + 1) % loops.length;
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        welcomeChannel.close();
+      } catch (IOException ioe) {
+        // Ignora
+      }
+    }
+  }
+
+  // Thread que atende um conjunto de conexões com um único Selector
+  class LoopNio extends Thread {
+    private final Selector selector;
+    // Tarefas que outras threads pedem para o loop executar (registrar um canal
+    // novo ou ativar a escrita de uma conexão)
+    private final Queue<Runnable> tarefas = new ConcurrentLinkedQueue<>();
+    // Buffer de leitura reaproveitado por todas as conexões do loop
+    private final ByteBuffer leitura = ByteBuffer.allocate(8192);
+
+    LoopNio(int num) throws IOException {
+      super("LoopNio-" + num);
+      this.selector = Selector.open();
+    }
+
+    void registrar(SocketChannel canal) {
+      executarNoLoop(() -> {
+        try {
+          SelectionKey key = canal.register(selector, SelectionKey.OP_READ);
+          ConexaoNio conexao = new ConexaoNio(canal, key, this);
+          processador.prepararConexao(conexao);
+          key.attach(conexao);
+        } catch (IOException e) {
+          try {
+            canal.close();
+          } catch (IOException ignored) {
+          }
+        }
+      });
+    }
+
+    // Executa a tarefa na thread do loop, se já estivermos nela executa direto
+    void executarNoLoop(Runnable tarefa) {
+      if (Thread.currentThread() == this) {
+        tarefa.run();
+        return;
+      }
+      tarefas.add(tarefa);
+      selector.wakeup();
+    }
+
+    public void run() {
+      Conexao.proibirBloqueio();
+      while (true) {
+        try {
+          selector.select();
+
+          Runnable tarefa;
+          while ((tarefa = tarefas.poll()) != null) {
+            tarefa.run();
+          }
+
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            ConexaoNio conexao = (ConexaoNio) key.attachment();
+            try {
+              if (key.isValid() && key.isReadable()) {
+                ler(conexao);
+              }
+              if (key.isValid() && key.isWritable()) {
+                conexao.escreverPendentes();
+              }
+            } catch (IOException | CancelledKeyException e) {
+              // Cliente fechou a conexão ou ela foi fechada por outra thread
+              conexao.fecharAgora();
+            }
+          }
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    // Lê o que estiver disponível no canal e processa todas as linhas completas
+    private void ler(ConexaoNio conexao) throws IOException {
+      leitura.clear();
+      int lidos = conexao.getCanal().read(leitura);
+      if (lidos == -1) {
+        conexao.fecharAgora();
+        return;
+      }
+      // As linhas são separadas direto dos bytes lidos, o que sobrar de uma
+      // linha incompleta fica guardado na LinhaComando da conexão
+      LinhaComando linha = conexao.getLinha();
+      byte[] dados = leitura.array();
+      int limite = leitura.position();
+      int pos = 0;
+      while ((pos = linha.consumir(dados, pos, limite)) >= 0) {
+        boolean sair = processador.processarLinha(linha, conexao);
+        linha.limpar();
+        if (sair) {
+          // Cliente pediu para sair, fecha depois de enviar a resposta
+          conexao.fechar();
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import classes.*;
+
+// Threads que executam as partidas em andamento, divididas em shards (em geral
+// um por núcleo). Cada partida fica sempre no shard idPartida % numeroShards,
+// então os comandos, as expirações do turno e as notificações de uma partida
+// rodam sempre na mesma thread e os dados dela continuam no cache daquele núcleo
+// Cada shard conta as tarefas na fila e o tempo ocupado, e a cada
+// INTERVALO_RELATORIO_SHARDS segundos um relatório mostra se algum shard está
+// mais carregado que os outros
+public class ShardsPartidas {
+  private final Shard[] shards;
+  private final ScheduledExecutorService relatorioScheduler = Executors.newSingleThreadScheduledExecutor();
+
+  public ShardsPartidas(int numeroShards) {
+    this.shards = new Shard[numeroShards];
+    for (int i = 0; i < numeroShards; i++) {
+      this.shards[i] = new Shard(i);
+    }
+  }
+
+  // Agenda o relatório periódico
+  public void iniciar() {
+    int intervalo = Constants.INTERVALO_RELATORIO_SHARDS;
+    if (intervalo > 0) {
+      relatorioScheduler.scheduleAtFixedRate(this::imprimirRelatorio, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+  }
+
+  // Quantidade configurada em NUMERO_SHARDS_PARTIDAS, 0 usa um por núcleo
+  public static int numeroShardsConfigurado() {
+    if (Constants.NUMERO_SHARDS_PARTIDAS > 0) {
+      return Constants.NUMERO_SHARDS_PARTIDAS;
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  public Shard shardDaPartida(int idPartida) {
+    return shards[Math.floorMod(idPartida, shards.length)];
+  }
+
+  public int getNumeroShards() {
+    return shards.length;
+  }
+
+  public Shard getShard(int indice) {
+    return shards[indice];
+  }
+
+  private void imprimirRelatorio() {
+    long agora = System.nanoTime();
+    boolean houveTarefas = false;
+    StringBuilder relatorio = new StringBuilder();
+    relatorio.append("Shards das partidas nos ultimos ").append(Constants.INTERVALO_RELATORIO_SHARDS).append("s\n");
+    for (int i = 0; i < shards.length; i++) {
+      Shard shard = shards[i];
+      long tarefas = shard.tarefasIntervalo.getAndSet(0);
+      double utilizacao = shard.utilizacaoDesde(agora);
+      houveTarefas |= tarefas > 0;
+      relatorio.append("  shard ").append(i).append(": ").append(tarefas).append(" tarefas, ")
+          .append(shard.getTarefasPendentes()).append(" na fila, ")
+          .append(String.format("%.1f", utilizacao * 100)).append("% ocupado\n");
+    }
+    if (houveTarefas) {
+      System.out.print(relatorio);
+    }
+  }
+
+  // Um shard: uma thread com a fila de execuções das caixas das partidas dele
+  public static class Shard implements Executor {
+    private final int indice;
+    private final ExecutorService thread;
+    // Tarefas das caixas deste shard esperando para rodar
+    private final AtomicInteger tarefasPendentes = new AtomicInteger();
+    private final AtomicLong tarefasExecutadas = new AtomicLong();
+    private final AtomicLong tarefasIntervalo = new AtomicLong();
+    private final AtomicLong nanosOcupado = new AtomicLong();
+    // Tempo ocupado e instante da última vez que a utilização foi calculada,
+    // usados só pela thread do relatório
+    private long nanosOcupadoAnterior = 0;
+    private long instanteAnterior = System.nanoTime();
+
+    Shard(int indice) {
+      this.indice = indice;
+      this.thread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+          Conexao.proibirBloqueio();
+          r.run();
+        }, "shard-partidas-" + indice);
+        t.setDaemon(true);
+        return t;
+      });
+    }
+
+    @Override
+    public void execute(Runnable execucao) {
+      thread.execute(() -> {
+        long inicio = System.nanoTime();
+        try {
+          execucao.run();
+        } finally {
+          nanosOcupado.addAndGet(System.nanoTime() - inicio);
+        }
+      });
+    }
+
+    // Chamados pela CaixaPartida para cada tarefa que entra na fila e que roda
+    void tarefaEnfileirada() {
+      tarefasPendentes.incrementAndGet();
+    }
+
+    void tarefaExecutada() {
+      tarefasPendentes.decrementAndGet();
+      tarefasExecutadas.incrementAndGet();
+      tarefasIntervalo.incrementAndGet();
+    }
+
+    public int getIndice() {
+      return this.indice;
+    }
+
+    public int getTarefasPendentes() {
+      return tarefasPendentes.get();
+    }
+
+    public long getTarefasExecutadas() {
+      return tarefasExecutadas.get();
+    }
+
+    public long getNanosOcupado() {
+      return nanosOcupado.get();
+    }
+
+    // Fração do tempo (0 a 1) em que a thread do shard ficou ocupada desde a
+    // última chamada
+    double utilizacaoDesde(long agora) {
+      long ocupado = nanosOcupado.get();
+      long intervalo = agora - instanteAnterior;
+      double utilizacao = intervalo <= 0 ? 0 : (double) (ocupado - nanosOcupadoAnterior) / intervalo;
+      nanosOcupadoAnterior = ocupado;
+      instanteAnterior = agora;
+      return Math.min(1.0, utilizacao);
+    }
+  }
+}